@@ -1,21 +1,37 @@
 package com.example.demo;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
+import com.example.demo.security.BoundedBCryptPasswordEncoder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @EnableJpaRepositories("com.example.demo.model.persistence.repositories")
 @EntityScan("com.example.demo.model.persistence")
+@EnableCaching
 @SpringBootApplication(exclude = {SecurityAutoConfiguration.class})	// use custom security
 public class SareetaApplication {
 
+	/**
+	 * Password encoder hashing on its own bounded pool, see security.bcrypt.* properties.
+	 */
 	@Bean
-	public BCryptPasswordEncoder passwordEncoder() {
-		return new BCryptPasswordEncoder();
+	public BCryptPasswordEncoder passwordEncoder(@Value("${security.bcrypt.strength:10}") int strength,
+			@Value("${security.bcrypt.threads:0}") int threads,
+			@Value("${security.bcrypt.queue-capacity:64}") int queueCapacity,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		return new BoundedBCryptPasswordEncoder(strength, poolSize, queueCapacity, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
 	}
 	
 	public static void main(String[] args) {
@@ -0,0 +1,76 @@
+package com.example.demo.aspect;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/**
+ * Bounded queue of log events written by a single background thread, so callers never wait on the appender.
+ * When the queue is full the event is dropped and counted; the count is logged once the writer catches up.
+ */
+class AsyncLogWriter {
+
+	private final Logger log;
+
+	private final BlockingQueue<LogEvent> queue;
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final Thread worker;
+
+	private volatile boolean running = true;
+
+	AsyncLogWriter(Logger log, int capacity) {
+		this.log = log;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.worker = new Thread(this::drain, "logging-aspect-writer");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * Queue an event, or drop it when the queue is full.
+	 * @param event
+	 */
+	void write(LogEvent event) {
+		if (!queue.offer(event)) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Stop the writer once the events already queued are written.
+	 * @param timeoutMillis
+	 * @throws InterruptedException
+	 */
+	void shutdown(long timeoutMillis) throws InterruptedException {
+		running = false;
+		worker.join(timeoutMillis);
+	}
+
+	private void drain() {
+		long reportedDrops = 0;
+		try {
+			while (running || !queue.isEmpty()) {
+				LogEvent event = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (event != null) {
+					event.writeTo(log);
+				}
+				long drops = dropped.get();
+				if (drops > reportedDrops && queue.isEmpty()) {
+					log.warn("event=dropped count={}", drops - reportedDrops);
+					reportedDrops = drops;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
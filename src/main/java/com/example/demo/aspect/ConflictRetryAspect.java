@@ -0,0 +1,100 @@
+package com.example.demo.aspect;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.demo.exceptions.APIConflictException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Bounded retry of {@link RetryOnConflict} methods. It runs outside the transaction interceptor, so every attempt
+ * gets a fresh transaction and reads the winner's state. Between attempts it sleeps a random time up to an
+ * exponentially growing bound, so the losers of a race do not collide again. After the last attempt the caller
+ * gets a 409.
+ * Published metrics, tagged with the method name:
+ * concurrency.conflicts (failed attempts), concurrency.retries (attempts repeated) and
+ * concurrency.retries.exhausted (calls answered with 409).
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class ConflictRetryAspect {
+
+	private static final Logger log = LoggerFactory.getLogger(ConflictRetryAspect.class);
+
+	private static final long MAX_BACKOFF_MILLIS = 1000;
+
+	private final int maxAttempts;
+
+	private final long backoffMillis;
+
+	private final MeterRegistry meterRegistry;
+
+	public ConflictRetryAspect(@Value("${concurrency.retry.max-attempts:5}") int maxAttempts,
+			@Value("${concurrency.retry.backoff-millis:5}") long backoffMillis,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.backoffMillis = backoffMillis;
+		this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+	}
+
+	@Around("@annotation(retryOnConflict)")
+	public Object retry(ProceedingJoinPoint joinPoint, RetryOnConflict retryOnConflict) throws Throwable {
+		// inside an outer transaction a failed attempt has already doomed the caller, let it decide
+		if (TransactionSynchronizationManager.isActualTransactionActive()) {
+			return joinPoint.proceed();
+		}
+		String operation = joinPoint.getSignature().getDeclaringType().getSimpleName() + "." + joinPoint.getSignature().getName();
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return joinPoint.proceed();
+			} catch (Throwable ex) {
+				if (!isConflict(ex, retryOnConflict.value())) {
+					throw ex;
+				}
+				counter("concurrency.conflicts", operation).increment();
+				if (attempt >= maxAttempts) {
+					counter("concurrency.retries.exhausted", operation).increment();
+					log.warn("{} still conflicting after {} attempts", operation, attempt);
+					throw new APIConflictException("Concurrent modification, please retry.", ex);
+				}
+				counter("concurrency.retries", operation).increment();
+				backoff(attempt);
+			}
+		}
+	}
+
+	private static boolean isConflict(Throwable ex, Class<? extends Throwable>[] conflicts) {
+		for (Class<? extends Throwable> conflict : conflicts) {
+			if (conflict.isInstance(ex)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void backoff(int attempt) throws InterruptedException {
+		long bound = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempt - 1, 20));
+		if (bound > 0) {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+		}
+	}
+
+	private Counter counter(String name, String operation) {
+		return meterRegistry.counter(name, "operation", operation);
+	}
+}
@@ -0,0 +1,36 @@
+package com.example.demo.aspect;
+
+import org.slf4j.Logger;
+
+/**
+ * One controller execution to log. Holds only short summaries built on the calling thread,
+ * the message itself is formatted by the writer thread.
+ */
+class LogEvent {
+
+	private final boolean error;
+	private final String className;
+	private final String methodName;
+	private final String arguments;
+	private final String outcome;
+	private final long durationMicros;
+
+	LogEvent(boolean error, String className, String methodName, String arguments, String outcome, long durationMicros) {
+		this.error = error;
+		this.className = className;
+		this.methodName = methodName;
+		this.arguments = arguments;
+		this.outcome = outcome;
+		this.durationMicros = durationMicros;
+	}
+
+	void writeTo(Logger log) {
+		if (error) {
+			log.error("event=exception class={} method={} args=({}) exception=\"{}\" durationUs={}",
+					className, methodName, arguments, outcome, durationMicros);
+		} else {
+			log.info("event=execution class={} method={} args=({}) result={} durationUs={}",
+					className, methodName, arguments, outcome, durationMicros);
+		}
+	}
+}
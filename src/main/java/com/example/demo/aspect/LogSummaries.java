@@ -0,0 +1,76 @@
+package com.example.demo.aspect;
+
+import java.util.Collection;
+
+import org.springframework.http.ResponseEntity;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.model.requests.ModifyCartRequest;
+
+/**
+ * Short descriptions of controller arguments and results for logging: ids and sizes instead of whole object
+ * graphs, and never passwords.
+ */
+final class LogSummaries {
+
+	private static final int MAX_TEXT_LENGTH = 64;
+
+	private LogSummaries() {
+	}
+
+	static String describe(Object value) {
+		if (value == null) {
+			return "null";
+		}
+		if (value instanceof ResponseEntity) {
+			ResponseEntity<?> response = (ResponseEntity<?>) value;
+			return response.getStatusCodeValue() + " " + describe(response.getBody());
+		}
+		if (value instanceof CharSequence) {
+			CharSequence text = (CharSequence) value;
+			return text.length() > MAX_TEXT_LENGTH ? text.subSequence(0, MAX_TEXT_LENGTH) + "..." : text.toString();
+		}
+		if (value instanceof Number || value instanceof Boolean) {
+			return value.toString();
+		}
+		if (value instanceof User) {
+			User user = (User) value;
+			return "User(id=" + user.getId() + ", username=" + user.getUsername() + ")";
+		}
+		if (value instanceof UserOrder) {
+			UserOrder order = (UserOrder) value;
+			return "UserOrder(id=" + order.getId() + ", lines=" + (order.getItems() == null ? 0 : order.getItems().size())
+					+ ", total=" + order.getTotal() + ")";
+		}
+		if (value instanceof Cart) {
+			Cart cart = (Cart) value;
+			return "Cart(id=" + cart.getId() + ", lines=" + cart.getItems().size() + ", total=" + cart.getTotal() + ")";
+		}
+		if (value instanceof CreateUserRequest) {
+			return "CreateUserRequest(username=" + ((CreateUserRequest) value).getUsername() + ")";
+		}
+		if (value instanceof ModifyCartRequest) {
+			ModifyCartRequest request = (ModifyCartRequest) value;
+			return "ModifyCartRequest(username=" + request.getUsername() + ", itemId=" + request.getItemId()
+					+ ", quantity=" + request.getQuantity() + ")";
+		}
+		if (value instanceof Collection) {
+			return value.getClass().getSimpleName() + "(size=" + ((Collection<?>) value).size() + ")";
+		}
+		return value.getClass().getSimpleName();
+	}
+
+	static String describeAll(Object[] values) {
+		StringBuilder summary = new StringBuilder();
+		for (Object value : values) {
+			if (summary.length() > 0) {
+				summary.append(", ");
+			}
+			summary.append(describe(value));
+		}
+		return summary.toString();
+	}
+}
@@ -6,22 +6,30 @@ import org.aspectj.lang.annotation.AfterThrowing;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
-import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.ResponseEntity;
 
-import java.lang.reflect.Method;
-import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 
 @Aspect
 @Configuration
-public class LoggingAspect {
+public class LoggingAspect implements DisposableBean {
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2000;
 
     private Logger log = LoggerFactory.getLogger(LoggingAspect.class);
 
+    /**
+     * Events are summarized on the request thread and written by a background thread,
+     * dropped when the queue is full.
+     */
+    private final AsyncLogWriter writer = new AsyncLogWriter(log, QUEUE_CAPACITY);
+
     /**
      * Point cut for createUser method in UserController
      */
@@ -50,29 +58,33 @@ public class LoggingAspect {
     public Object loggingCreationResultAndError(ProceedingJoinPoint joinPoint) throws Throwable {
 
         /**
-         * Retrieve class name, method name and 1st argument
+         * Skip all the work when nothing would be logged
          */
-        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-        Method method = signature.getMethod();
-        String className = signature.getDeclaringTypeName();
-        String methodName = method.getName();
-        String argument = joinPoint.getArgs()[0].toString();
+        if (!log.isErrorEnabled()) {
+            return joinPoint.proceed();
+        }
 
         /**
          * Let's execute the method
          */
+        long start = System.nanoTime();
         ResponseEntity result = null;
         try {
             result = (ResponseEntity) joinPoint.proceed();
             // Logging when success execute method
-            log.info("Info: Execution of {}.{} with argument ({}) and result {}", className, methodName, argument, result.getBody());
+            if (log.isInfoEnabled()) {
+                writer.write(new LogEvent(false, className(joinPoint), joinPoint.getSignature().getName(),
+                        LogSummaries.describe(joinPoint.getArgs()[0]), LogSummaries.describe(result), elapsedMicros(start)));
+            }
         }
         /**
          * When exception happens
          */
         catch (Exception ex) {
-            // Logging when exception happens
-            log.error("Exception: Execution of {}.{} with argument ({}) and exception {}", className, methodName, argument, ex.getMessage());
+            // Logging when exception happens, the exception handler still answers with its status
+            writer.write(new LogEvent(true, className(joinPoint), joinPoint.getSignature().getName(),
+                    LogSummaries.describe(joinPoint.getArgs()[0]), ex.getMessage(), elapsedMicros(start)));
+            throw ex;
         }
         return result;
     }
@@ -82,15 +94,23 @@ public class LoggingAspect {
             throwing = "theExec"
     )
     public void loggingException(JoinPoint joinPoint, Throwable theExec) {
-        /**
-         * Retrieve class name, method name and arguments
-         */
-        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-        Method method = signature.getMethod();
-        String className = signature.getDeclaringTypeName();
-        String methodName = method.getName();
-        String argument = Arrays.stream(joinPoint.getArgs()).reduce(null, (partialResult, arg) -> partialResult == null ? arg.toString() : partialResult + ", " + arg, String::concat);
+        if (!log.isErrorEnabled()) {
+            return;
+        }
+        writer.write(new LogEvent(true, className(joinPoint), joinPoint.getSignature().getName(),
+                LogSummaries.describeAll(joinPoint.getArgs()), theExec.getMessage(), 0));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        writer.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+    }
+
+    private static String className(JoinPoint joinPoint) {
+        return joinPoint.getSignature().getDeclaringTypeName();
+    }
 
-        log.error("Exception: Execution of {}.{} with argument ({}) and exception {}", className, methodName, argument, theExec.getMessage());
+    private static long elapsedMicros(long start) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
     }
 }
@@ -0,0 +1,26 @@
+package com.example.demo.aspect;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.dao.ConcurrencyFailureException;
+
+/**
+ * Run the annotated transactional method again, in a new transaction, when it fails because of a concurrent
+ * write, see {@link ConflictRetryAspect}. The method must be safe to repeat: it has to read the state it
+ * changes inside the transaction.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RetryOnConflict {
+
+	/**
+	 * Failures that mean another transaction won the race. Optimistic lock failures, lock timeouts and
+	 * deadlocks are all {@link ConcurrencyFailureException}s.
+	 */
+	Class<? extends Throwable>[] value() default ConcurrencyFailureException.class;
+}
@@ -1,70 +1,95 @@
- package com.example.demo.controllers;
+package com.example.demo.controllers;
 
-import java.util.Optional;
-import java.util.stream.IntStream;
-
-import com.example.demo.exceptions.APINotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.demo.model.persistence.Cart;
-import com.example.demo.model.persistence.Item;
-import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.repositories.CartRepository;
-import com.example.demo.model.persistence.repositories.ItemRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BulkModifyCartRequest;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartResponse;
+import com.example.demo.service.CartLockManager;
+import com.example.demo.service.CartService;
+import com.example.demo.service.WriteBehindCartStore;
 
 @RestController
 @RequestMapping("/api/cart")
 public class CartController {
+
+	/**
+	 * A cart belongs to one user and changes with every modification: private, always revalidated.
+	 */
+	private static final CacheControl CART_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
 	
 	@Autowired
-	private UserRepository userRepository;
-	
-	@Autowired
-	private CartRepository cartRepository;
-	
+	private CartService cartService;
+
 	@Autowired
-	private ItemRepository itemRepository;
+	private CartLockManager cartLocks;
+
+	/**
+	 * Present with cart.storage.mode=write-behind, carts are then read and changed in memory.
+	 */
+	@Autowired(required = false)
+	private WriteBehindCartStore cartStore;
+
+	@GetMapping("/{username}")
+	public ResponseEntity<CartResponse> getCart(@PathVariable String username,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		Cart cart = cartStore != null ? cartStore.findCart(username) : cartService.findCart(username);
+		return ConditionalResponses.respond(ifNoneMatch, etag(cart), lastModified(cart), CART_CACHE_CONTROL,
+				() -> CartResponse.from(cart));
+	}
 	
 	@PostMapping("/addToCart")
-	public ResponseEntity<Cart> addToCart(@RequestBody ModifyCartRequest request) {
-		User user = userRepository.findByUsername(request.getUsername());
-		if(user == null) {
-			throw new APINotFoundException("User not found - username: " + request.getUsername());
+	public ResponseEntity<CartResponse> addToCart(@RequestBody ModifyCartRequest request) {
+		if (cartStore != null) {
+			return modified(cartStore.addToCart(request));
 		}
-		Optional<Item> item = itemRepository.findById(request.getItemId());
-		if(!item.isPresent()) {
-			throw new APINotFoundException("Item not found - id: " + request.getItemId());
-		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.addItem(item.get()));
-		cartRepository.save(cart);
-		return ResponseEntity.ok(cart);
+		return modified(cartLocks.withLock(request.getUsername(), () -> cartService.addToCart(request)));
 	}
 	
 	@PostMapping("/removeFromCart")
-	public ResponseEntity<Cart> removeFromCart(@RequestBody ModifyCartRequest request) {
-		User user = userRepository.findByUsername(request.getUsername());
-		if(user == null) {
-			throw new APINotFoundException("User not found - username: " + request.getUsername());
+	public ResponseEntity<CartResponse> removeFromCart(@RequestBody ModifyCartRequest request) {
+		if (cartStore != null) {
+			return modified(cartStore.removeFromCart(request));
 		}
-		Optional<Item> item = itemRepository.findById(request.getItemId());
-		if(!item.isPresent()) {
-			throw new APINotFoundException("Item not found - id: " + request.getItemId());
+		return modified(cartLocks.withLock(request.getUsername(), () -> cartService.removeFromCart(request)));
+	}
+
+	/**
+	 * Apply a list of add, remove and set operations to the cart at once, all or nothing.
+	 */
+	@PostMapping("/modify")
+	public ResponseEntity<CartResponse> modifyCart(@RequestBody BulkModifyCartRequest request) {
+		if (cartStore != null) {
+			return modified(cartStore.modifyCart(request));
 		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.removeItem(item.get()));
-		cartRepository.save(cart);
-		return ResponseEntity.ok(cart);
+		return modified(cartLocks.withLock(request.getUsername(), () -> cartService.modifyCart(request)));
+	}
+
+	/**
+	 * The cart after a change, with the ETag a following conditional GET can send.
+	 */
+	private ResponseEntity<CartResponse> modified(Cart cart) {
+		return ConditionalResponses.respond(null, etag(cart), lastModified(cart), CART_CACHE_CONTROL,
+				() -> CartResponse.from(cart));
+	}
+
+	private static String etag(Cart cart) {
+		return ConditionalResponses.etag("cart", cart.getId(), cart.getVersion());
+	}
+
+	private static long lastModified(Cart cart) {
+		return cart.getLastModified() == null ? -1 : cart.getLastModified().getTime();
 	}
 		
 }
@@ -0,0 +1,64 @@
+package com.example.demo.controllers;
+
+import java.util.function.Supplier;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+
+/**
+ * Conditional GET support. Handlers compute an ETag from a version they already hold (an entity version column
+ * or the catalog generation) and answer a matching If-None-Match with 304 before building or serializing the body.
+ */
+final class ConditionalResponses {
+
+	private ConditionalResponses() {
+	}
+
+	/**
+	 * Strong ETag made of the given parts, e.g. "item-1-3".
+	 */
+	static String etag(Object... parts) {
+		return "\"" + StringUtils.arrayToDelimitedString(parts, "-") + "\"";
+	}
+
+	/**
+	 * Whether the If-None-Match header value matches the ETag, using the weak comparison RFC 7232 requires
+	 * for If-None-Match.
+	 */
+	static boolean matches(String ifNoneMatch, String etag) {
+		if (!StringUtils.hasText(ifNoneMatch)) {
+			return false;
+		}
+		for (String candidate : StringUtils.commaDelimitedListToStringArray(ifNoneMatch)) {
+			candidate = candidate.trim();
+			if (candidate.equals("*")) {
+				return true;
+			}
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 304 when ifNoneMatch matches the ETag, otherwise 200 with the body returned by the supplier. Both carry
+	 * the ETag, Last-Modified (when lastModified is positive) and Cache-Control headers.
+	 */
+	static <T> ResponseEntity<T> respond(String ifNoneMatch, String etag, long lastModified, CacheControl cacheControl,
+			Supplier<T> body) {
+		boolean notModified = matches(ifNoneMatch, etag);
+		ResponseEntity.BodyBuilder builder = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+				.eTag(etag)
+				.cacheControl(cacheControl);
+		if (lastModified > 0) {
+			builder.lastModified(lastModified);
+		}
+		return notModified ? builder.build() : builder.body(body.get());
+	}
+}
@@ -1,45 +1,166 @@
 package com.example.demo.controllers;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+import javax.servlet.http.HttpServletResponse;
+
+import com.example.demo.exceptions.APIBadRequestException;
 import com.example.demo.exceptions.APINotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.demo.model.persistence.Item;
-import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.responses.StockLevel;
+import com.example.demo.service.CatalogVersion;
+import com.example.demo.service.InventoryService;
+import com.example.demo.service.ItemService;
 
 @RestController
 @RequestMapping("/api/item")
 public class ItemController {
 
+	private static final int DEFAULT_PAGE_SIZE = 20;
+	private static final int MAX_PAGE_SIZE = 100;
+	private static final List<String> SORTABLE_PROPERTIES = Arrays.asList("id", "name", "price");
+	public static final String NDJSON_VALUE = "application/x-ndjson";
+
+	/**
+	 * The catalog changes rarely: clients may keep it for a minute, after which they revalidate with the ETag.
+	 * Private, as it is only served to authenticated users, so shared caches must not hand it to anyone else.
+	 */
+	private static final CacheControl CATALOG_CACHE_CONTROL = CacheControl.maxAge(60, TimeUnit.SECONDS).cachePrivate();
+
+	@Autowired
+	private ItemService itemService;
+
+	@Autowired
+	private CatalogVersion catalogVersion;
+
 	@Autowired
-	private ItemRepository itemRepository;
+	private InventoryService inventoryService;
 	
+	/**
+	 * Page through the catalog. sort is a property, optionally followed by ",asc" or ",desc". With summary
+	 * only id, name and price are selected and returned.
+	 */
 	@GetMapping
-	public ResponseEntity<List<Item>> getItems() {
-		return ResponseEntity.ok(itemRepository.findAll());
+	public ResponseEntity<Page<?>> getItems(@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+			@RequestParam(defaultValue = "id") String sort,
+			@RequestParam(defaultValue = "false") boolean summary,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		PageRequest pageable = pageRequest(page, size, parseSort(sort));
+		return catalogResponse(ifNoneMatch, () -> summary ? itemService.findSummaries(pageable) : itemService.findAll(pageable));
+	}
+
+	/**
+	 * Export the whole catalog as newline delimited JSON, streamed from the database.
+	 */
+	@GetMapping(value = "/export", produces = NDJSON_VALUE)
+	public void exportItems(HttpServletResponse response) throws IOException {
+		response.setContentType(NDJSON_VALUE);
+		itemService.writeCatalog(response.getOutputStream());
 	}
 	
 	@GetMapping("/{id}")
-	public ResponseEntity<Item> getItemById(@PathVariable Long id) {
-		Optional<Item> itemOptional = itemRepository.findById(id);
-		if (!itemOptional.isPresent())
-			throw new APINotFoundException("Item not found - id: " + id);
-		return ResponseEntity.ok(itemOptional.get());
+	public ResponseEntity<Item> getItemById(@PathVariable Long id,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		Item item = findItem(id);
+		return ConditionalResponses.respond(ifNoneMatch, ConditionalResponses.etag("item", item.getId(), item.getVersion()),
+				catalogVersion.getLastModified(), CATALOG_CACHE_CONTROL, () -> item);
+	}
+	
+	/**
+	 * Live stock of the item: units on hand, reserved by carts and available. Not cached, it changes with
+	 * every cart.
+	 */
+	@GetMapping("/{id}/stock")
+	public ResponseEntity<StockLevel> getStock(@PathVariable Long id) {
+		findItem(id);
+		return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(inventoryService.level(id));
 	}
 	
 	@GetMapping("/name/{name}")
-	public ResponseEntity<List<Item>> getItemsByName(@PathVariable String name) {
-		List<Item> items = itemRepository.findByName(name);
-		if (items == null || items.isEmpty())
-			throw new APINotFoundException("Item not found - name: " + name);
-		return ResponseEntity.ok(items);
+	public ResponseEntity<List<Item>> getItemsByName(@PathVariable String name,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		return catalogResponse(ifNoneMatch, () -> {
+			List<Item> items = itemService.findByName(name);
+			if (items == null || items.isEmpty())
+				throw new APINotFoundException("Item not found - name: " + name);
+			return items;
+		});
+	}
+
+	/**
+	 * Search the catalog: case-insensitive, every term matches as a prefix of a word in the item name or
+	 * description, best match first.
+	 */
+	@GetMapping("/search")
+	public ResponseEntity<Page<Item>> searchItems(@RequestParam("q") String query,
+			@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		PageRequest pageable = pageRequest(page, size, Sort.unsorted());
+		return catalogResponse(ifNoneMatch, () -> itemService.search(query, pageable));
+	}
+
+	/**
+	 * Response for a catalog read whose ETag is the catalog generation: the body is only read when the client
+	 * copy is stale.
+	 */
+	private <T> ResponseEntity<T> catalogResponse(String ifNoneMatch, Supplier<T> body) {
+		return ConditionalResponses.respond(ifNoneMatch, ConditionalResponses.etag("catalog", catalogVersion.getGeneration()),
+				catalogVersion.getLastModified(), CATALOG_CACHE_CONTROL, body);
+	}
+
+	private Item findItem(Long id) {
+		Optional<Item> itemOptional = itemService.findById(id);
+		if (!itemOptional.isPresent())
+			throw new APINotFoundException("Item not found - id: " + id);
+		return itemOptional.get();
+	}
+
+	private PageRequest pageRequest(int page, int size, Sort sort) {
+		if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+			throw new APIBadRequestException("Page must be positive and size between 1 and " + MAX_PAGE_SIZE + ".");
+		}
+		return PageRequest.of(page, size, sort);
+	}
+
+	/**
+	 * Parse "property[,asc|desc]". Items are always ordered by id last so pages are stable when names or
+	 * prices are equal.
+	 */
+	private Sort parseSort(String sort) {
+		String[] parts = sort.split(",");
+		String property = parts[0].trim();
+		if (!SORTABLE_PROPERTIES.contains(property) || parts.length > 2) {
+			throw new APIBadRequestException("Sort must be one of " + SORTABLE_PROPERTIES + ", optionally followed by ,asc or ,desc.");
+		}
+		Sort.Direction direction = Sort.Direction.ASC;
+		if (parts.length == 2) {
+			direction = Sort.Direction.fromOptionalString(parts[1].trim())
+					.orElseThrow(() -> new APIBadRequestException("Sort direction must be asc or desc."));
+		}
+		// prices are stored in minor units
+		Sort byProperty = Sort.by(direction, property.equals("price") ? "priceCents" : property);
+		return property.equals("id") ? byProperty : byProperty.and(Sort.by("id"));
 	}
 	
 }
@@ -1,55 +1,162 @@
 package com.example.demo.controllers;
 
+import java.io.IOException;
+import java.net.URI;
 import java.util.List;
 
+import javax.servlet.http.HttpServletResponse;
+
 import com.example.demo.exceptions.APIBadRequestException;
 import com.example.demo.exceptions.APINotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserCredentials;
 import com.example.demo.model.persistence.UserOrder;
 import com.example.demo.model.persistence.repositories.OrderRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.CheckoutStatus;
+import com.example.demo.service.AsyncCheckout;
+import com.example.demo.service.CartLockManager;
+import com.example.demo.service.IdempotencyKeys;
+import com.example.demo.service.OrderService;
+import com.example.demo.service.UserDirectory;
+import com.example.demo.service.WriteBehindCartStore;
 
 
 @RestController
 @RequestMapping("/api/order")
 public class OrderController {
+
+	private static final int DEFAULT_PAGE_SIZE = 20;
+	private static final int MAX_PAGE_SIZE = 100;
+	private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+	private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
 	
 	@Autowired
-	private UserRepository userRepository;
+	private UserDirectory userDirectory;
 	
 	@Autowired
 	private OrderRepository orderRepository;
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private CartLockManager cartLocks;
+
+	@Autowired
+	private IdempotencyKeys idempotencyKeys;
+
+	/**
+	 * Present with cart.storage.mode=write-behind, the cart is then written before it is ordered.
+	 */
+	@Autowired(required = false)
+	private WriteBehindCartStore cartStore;
+
+	/**
+	 * Present with orders.checkout.mode=async, submits are then queued and answered with 202.
+	 */
+	@Autowired(required = false)
+	private AsyncCheckout asyncCheckout;
 	
 	
+	/**
+	 * Order the user's cart. A client retrying a submit sends the same Idempotency-Key header, and gets the order
+	 * the first attempt created instead of a second one.
+	 * In asynchronous mode the checkout is only queued: the answer is 202 with the status of the checkout, the
+	 * Location header pointing to where it is polled; a full queue is answered with 503.
+	 */
 	@PostMapping("/submit/{username}")
-	public ResponseEntity<UserOrder> submit(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
-		if(user == null) {
-			throw new APINotFoundException("User not found - username: " + username);
+	public ResponseEntity<?> submit(@PathVariable String username,
+			@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+		if (asyncCheckout != null) {
+			CheckoutStatus status = asyncCheckout.submit(username, idempotencyKey);
+			URI location = UriComponentsBuilder.fromPath("/api/order/status/{username}/{orderId}")
+					.buildAndExpand(username, status.getOrderId())
+					.encode()
+					.toUri();
+			return ResponseEntity.accepted().location(location).body(status);
 		}
-		if (user.getCart().getItems() == null || user.getCart().getItems().isEmpty()) {
-			throw new APIBadRequestException("Cart is empty.");
+		if (idempotencyKey == null) {
+			return ResponseEntity.ok(submitCart(username, null));
 		}
-		UserOrder order = UserOrder.createFromCart(user.getCart());
-		user.getCart().emptyCart();
-		orderRepository.save(order);
-		return ResponseEntity.ok(order);
+		return ResponseEntity.ok(idempotencyKeys.submit(username, idempotencyKey, () -> submitCart(username, idempotencyKey)));
+	}
+
+	private UserOrder submitCart(String username, String idempotencyKey) {
+		if (cartStore != null) {
+			return cartStore.submit(username, () -> orderService.submit(username, idempotencyKey));
+		}
+		return cartLocks.withLock(username, () -> orderService.submit(username, idempotencyKey));
+	}
+	
+	/**
+	 * Where the checkout of the order stands. An order written long ago, or submitted synchronously, is
+	 * COMPLETED; an unknown one is 404 until it is written.
+	 */
+	@GetMapping("/status/{username}/{orderId}")
+	public ResponseEntity<CheckoutStatus> getStatus(@PathVariable String username, @PathVariable long orderId) {
+		CheckoutStatus status = asyncCheckout == null ? null : asyncCheckout.status(username, orderId);
+		if (status == null) {
+			status = orderRepository.findById(orderId)
+					.filter(order -> order.getUser().getUsername().equals(username))
+					.map(order -> CheckoutStatus.of(orderId, CheckoutStatus.State.COMPLETED))
+					.orElseThrow(() -> new APINotFoundException("Order not found - id: " + orderId));
+		}
+		return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(status);
 	}
 	
+	/**
+	 * Page through the order history, newest first. Pass the id of the last order received as before to get the
+	 * next page; the X-Next-Cursor header carries that id while more orders may follow.
+	 */
 	@GetMapping("/history/{username}")
-	public ResponseEntity<List<UserOrder>> getOrdersForUser(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
+	public ResponseEntity<List<UserOrder>> getOrdersForUser(@PathVariable String username,
+			@RequestParam(required = false) Long before,
+			@RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+		UserCredentials user = findUser(username);
+		if (size < 1 || size > MAX_PAGE_SIZE) {
+			throw new APIBadRequestException("Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
+		}
+		Pageable page = PageRequest.of(0, size);
+		List<UserOrder> orders = before == null
+				? orderRepository.findByUserIdOrderByIdDesc(user.getId(), page)
+				: orderRepository.findByUserIdAndIdLessThanOrderByIdDesc(user.getId(), before, page);
+		if (orders.size() < size) {
+			return ResponseEntity.ok(orders);
+		}
+		return ResponseEntity.ok()
+				.header(NEXT_CURSOR_HEADER, String.valueOf(orders.get(orders.size() - 1).getId()))
+				.body(orders);
+	}
+
+	/**
+	 * Stream the whole order history as a JSON array without building it in memory.
+	 */
+	@GetMapping(value = "/history/{username}/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+	public void streamOrdersForUser(@PathVariable String username, HttpServletResponse response) throws IOException {
+		UserCredentials user = findUser(username);
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		orderService.writeHistory(user.getId(), response.getOutputStream());
+	}
+
+	private UserCredentials findUser(String username) {
+		UserCredentials user = userDirectory.find(username);
 		if(user == null) {
 			throw new APINotFoundException("User not found - username: " + username);
 		}
-		return ResponseEntity.ok(orderRepository.findByUser(user));
+		return user;
 	}
 }
@@ -5,12 +5,16 @@ import com.example.demo.exceptions.APIBadRequestException;
 import com.example.demo.exceptions.APINotFoundException;
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserCredentials;
 import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
 import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.service.UserDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.web.bind.annotation.*;
@@ -30,31 +34,47 @@ public class UserController {
 	@Autowired
 	private CartRepository cartRepository;
 
+	@Autowired
+	private UserDirectory userDirectory;
+
 	private static final Logger log = LoggerFactory.getLogger(UserController.class);
+
+	/**
+	 * The public part of a user, id and username, never changes once created: private, always revalidated.
+	 */
+	private static final CacheControl USER_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
 	
 	@GetMapping("/id/{id}")
-	public ResponseEntity<User> findById(@PathVariable Long id) {
+	public ResponseEntity<User> findById(@PathVariable Long id,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 		Optional<User> optionalUser = userRepository.findById(id);
 		if (!optionalUser.isPresent()) {
 			throw new APINotFoundException("User not found - id: " + id);
 		}
 
-		return ResponseEntity.ok(optionalUser.get());
+		return userResponse(ifNoneMatch, optionalUser.get());
 	}
 	
 	@GetMapping("/{username}")
-	public ResponseEntity<User> findByUserName(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
-		if (user == null) {
+	public ResponseEntity<User> findByUserName(@PathVariable String username,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		UserCredentials credentials = userDirectory.find(username);
+		if (credentials == null) {
 			throw new APINotFoundException("User not found - username: " + username);
 		}
-		return ResponseEntity.ok(user);
+		User user = new User(credentials.getId(), credentials.getUsername(), credentials.getPassword(), null);
+		return userResponse(ifNoneMatch, user);
+	}
+
+	private ResponseEntity<User> userResponse(String ifNoneMatch, User user) {
+		return ConditionalResponses.respond(ifNoneMatch, ConditionalResponses.etag("user", user.getId()), -1,
+				USER_CACHE_CONTROL, () -> user);
 	}
 	
 	@PostMapping("/create")
 	public ResponseEntity<User> createUser(@RequestBody CreateUserRequest createUserRequest) {
 
-		boolean exist = userRepository.findByUsername(createUserRequest.getUsername()) != null;
+		boolean exist = userDirectory.find(createUserRequest.getUsername()) != null;
 		if (exist) {
 			throw new APIBadRequestException("User already exists.");
 		}
@@ -74,6 +94,7 @@ public class UserController {
 		user.setCart(cart);
 
 		userRepository.save(user);
+		userDirectory.invalidate(user.getUsername());
 		return ResponseEntity.ok(user);
 	}
 }
@@ -0,0 +1,26 @@
+package com.example.demo.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+public class APIConflictException extends APIRuntimeException {
+
+    public APIConflictException() {
+        super(HttpStatus.CONFLICT);
+    }
+
+    public APIConflictException(String message) {
+        super(message, HttpStatus.CONFLICT);
+    }
+
+    public APIConflictException(String message, Throwable cause) {
+        super(message, cause, HttpStatus.CONFLICT);
+    }
+
+    public APIConflictException(Throwable cause) {
+        super(cause, HttpStatus.CONFLICT);
+    }
+
+    public APIConflictException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace, HttpStatus.CONFLICT);
+    }
+}
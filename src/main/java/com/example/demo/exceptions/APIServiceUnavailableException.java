@@ -0,0 +1,26 @@
+package com.example.demo.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+public class APIServiceUnavailableException extends APIRuntimeException {
+
+    public APIServiceUnavailableException() {
+        super(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    public APIServiceUnavailableException(String message) {
+        super(message, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    public APIServiceUnavailableException(String message, Throwable cause) {
+        super(message, cause, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    public APIServiceUnavailableException(Throwable cause) {
+        super(cause, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    public APIServiceUnavailableException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.demo.model.events;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.OrderItem;
+import com.example.demo.model.persistence.UserOrder;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Payload of the order.created event, everything downstream needs without reading the order back.
+ */
+@EqualsAndHashCode
+@ToString
+public class OrderCreatedEvent {
+
+	public static final String TYPE = "order.created";
+
+	@JsonProperty
+	private @Getter long orderId;
+
+	@JsonProperty
+	private @Getter long userId;
+
+	@JsonProperty
+	private @Getter String username;
+
+	@JsonProperty
+	private @Getter BigDecimal total;
+
+	@JsonProperty
+	private @Getter String currency;
+
+	@JsonProperty
+	private @Getter List<Line> items;
+
+	public OrderCreatedEvent() {
+	}
+
+	public OrderCreatedEvent(long orderId, long userId, String username, BigDecimal total, String currency,
+			List<Line> items) {
+		this.orderId = orderId;
+		this.userId = userId;
+		this.username = username;
+		this.total = total;
+		this.currency = currency;
+		this.items = items;
+	}
+
+	public static OrderCreatedEvent of(UserOrder order) {
+		List<Line> lines = order.getItems().stream().map(Line::of).collect(Collectors.toList());
+		return new OrderCreatedEvent(order.getId(), order.getUser().getId(), order.getUser().getUsername(),
+				order.getTotal(), order.getCurrency(), lines);
+	}
+
+	@EqualsAndHashCode
+	@ToString
+	public static class Line {
+
+		@JsonProperty
+		private @Getter long itemId;
+
+		@JsonProperty
+		private @Getter int quantity;
+
+		@JsonProperty
+		private @Getter BigDecimal unitPrice;
+
+		public Line() {
+		}
+
+		public Line(long itemId, int quantity, BigDecimal unitPrice) {
+			this.itemId = itemId;
+			this.quantity = quantity;
+			this.unitPrice = unitPrice;
+		}
+
+		static Line of(OrderItem item) {
+			return new Line(item.getItem().getId(), item.getQuantity(), Money.fromMinorUnits(item.getUnitPriceCents()));
+		}
+	}
+}
@@ -1,54 +1,111 @@
 package com.example.demo.model.persistence;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
+import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.ManyToMany;
+import javax.persistence.MapKey;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.ToString;
 
 @Entity
 @Table(name = "cart")
+@DynamicUpdate
 @ToString
 public class Cart {
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cart_seq")
+	@SequenceGenerator(name = "cart_seq", sequenceName = "cart_seq", allocationSize = 50)
 	@JsonProperty
 	@Column
 	private Long id;
 	
-	@ManyToMany
-	@JsonProperty
-	@Column
-    private List<Item> items;
+	/**
+	 * Cart lines keyed by item id, so adding or removing units of an item is a single lookup
+	 * no matter how many units are in the cart.
+	 */
+	@OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, orphanRemoval = true)
+	@MapKey(name = "itemId")
+    private Map<Long, CartItem> items;
 	
 	@OneToOne(mappedBy = "cart")
 	@JsonProperty
     private User user;
 	
-	@Column
-	@JsonProperty
-	private BigDecimal total;
+	/**
+	 * Sum of the line subtotals in minor units of {@link Money#CURRENCY}, kept up to date by every change of
+	 * a line and exposed in JSON as the decimal total.
+	 */
+	@Column(name = "total_cents", nullable = false)
+	@JsonIgnore
+	private long totalCents;
+
+	/**
+	 * Incremented whenever the cart row is updated, which every change of its lines does through the total.
+	 * The cart ETag is built from it.
+	 */
+	@Version
+	@Column(nullable = false)
+	@JsonIgnore
+	private long version;
+
+	@UpdateTimestamp
+	@Column(name = "last_modified")
+	@JsonIgnore
+	private Date lastModified;
 	
+	@JsonProperty
 	public BigDecimal getTotal() {
-		return total;
+		return Money.fromMinorUnits(totalCents);
+	}
+
+	@JsonProperty
+	public String getCurrency() {
+		return Money.CURRENCY.getCurrencyCode();
 	}
 
-	public void setTotal(BigDecimal total) {
-		this.total = total;
+	public long getTotalCents() {
+		return totalCents;
+	}
+
+	public void setTotalCents(long totalCents) {
+		this.totalCents = totalCents;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	public Date getLastModified() {
+		return lastModified;
+	}
+
+	public void setLastModified(Date lastModified) {
+		this.lastModified = lastModified;
 	}
 
 	public User getUser() {
@@ -67,39 +124,126 @@ public class Cart {
 		this.id = id;
 	}
 
-	public List<Item> getItems() {
-		return items;
+	@JsonProperty
+	public Collection<CartItem> getItems() {
+		if(items == null) {
+			return Collections.emptyList();
+		}
+		return items.values();
 	}
 
-	public void setItems(List<Item> items) {
-		this.items = items;
+	/**
+	 * Return the line holding the given item, or null when the item is not in the cart.
+	 * @param itemId
+	 * @return
+	 */
+	public CartItem getLine(Long itemId) {
+		return items == null ? null : items.get(itemId);
 	}
-	
+
 	public void addItem(Item item) {
+		addItem(item, 1);
+	}
+
+	/**
+	 * Add quantity units of the item to its line, creating the line on first add.
+	 * @param item
+	 * @param quantity
+	 */
+	public void addItem(Item item, int quantity) {
 		if(items == null) {
-			items = new ArrayList<>();
+			items = new HashMap<>();
 		}
-		items.add(item);
-		if(total == null) {
-			total = new BigDecimal(0);
+		if (quantity <= 0) {
+			return;
 		}
-		total = total.add(item.getPrice());
+		CartItem line = items.get(item.getId());
+		if (line == null) {
+			line = new CartItem(this, item, 0);
+			items.put(item.getId(), line);
+		}
+		line.setQuantity(line.getQuantity() + quantity);
+		totalCents = Math.addExact(totalCents, Money.times(line.getUnitPriceCents(), quantity));
 	}
-	
+
 	public void removeItem(Item item) {
+		removeItem(item, 1);
+	}
+
+	/**
+	 * Remove up to quantity units of the item, dropping the line once it reaches zero.
+	 * @param item
+	 * @param quantity
+	 */
+	public void removeItem(Item item, int quantity) {
 		if(items == null) {
-			items = new ArrayList<>();
+			items = new HashMap<>();
 		}
-		if(total == null) {
-			total = new BigDecimal(0);
+		CartItem line = items.get(item.getId());
+		if (line == null || quantity <= 0) {
+			return;
 		}
-		if (items.remove(item)) {
-			total = total.subtract(item.getPrice());
+		int removed = Math.min(quantity, line.getQuantity());
+		if (removed == line.getQuantity()) {
+			items.remove(item.getId());
+		} else {
+			line.setQuantity(line.getQuantity() - removed);
 		}
+		totalCents = Math.subtractExact(totalCents, Money.times(line.getUnitPriceCents(), removed));
+	}
+
+	/**
+	 * Set the number of units of the item, adding or removing the difference with the current quantity.
+	 * @param item
+	 * @param quantity
+	 */
+	public void setItemQuantity(Item item, int quantity) {
+		CartItem line = getLine(item.getId());
+		int current = line == null ? 0 : line.getQuantity();
+		if (quantity > current) {
+			addItem(item, quantity - current);
+		} else {
+			removeItem(item, current - quantity);
+		}
+	}
+
+	/**
+	 * Move a line of this cart to a new unit price, adjusting the total by the difference on its units only.
+	 * @param line
+	 * @param unitPriceCents
+	 */
+	public void repriceLine(CartItem line, long unitPriceCents) {
+		long difference = Money.times(unitPriceCents - line.getUnitPriceCents(), line.getQuantity());
+		totalCents = Math.addExact(totalCents, difference);
+		line.setUnitPriceCents(unitPriceCents);
+	}
+
+	/**
+	 * Detached copy of the cart and its lines at their unit prices, sharing the user and the items.
+	 * @return
+	 */
+	public Cart copy() {
+		Cart copy = new Cart();
+		copy.id = id;
+		copy.user = user;
+		copy.totalCents = totalCents;
+		copy.version = version;
+		copy.lastModified = lastModified;
+		copy.items = new HashMap<>();
+		for (CartItem line : getItems()) {
+			CartItem copied = new CartItem(copy, line.getItem(), line.getQuantity());
+			copied.setUnitPriceCents(line.getUnitPriceCents());
+			copy.items.put(line.getItemId(), copied);
+		}
+		return copy;
 	}
 
 	public void emptyCart() {
-		items = new ArrayList<>();
-		total = new BigDecimal(0);
+		if(items == null) {
+			items = new HashMap<>();
+		} else {
+			items.clear();
+		}
+		totalCents = 0;
 	}
 }
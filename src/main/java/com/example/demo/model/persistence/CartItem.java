@@ -0,0 +1,97 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.DynamicUpdate;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * One line of a cart: an item, how many units of it and its unit price, kept in line with the item price.
+ * A cart holds at most one line per item.
+ */
+@Entity
+@Table(name = "cart_item", uniqueConstraints = @UniqueConstraint(columnNames = {"cart_id", "item_id"}))
+@DynamicUpdate
+@ToString(exclude = "cart")
+public class CartItem {
+
+	/**
+	 * From a pooled sequence, one round trip per 50 ids, so the lines of a change are inserted as one JDBC batch.
+	 */
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cart_item_seq")
+	@SequenceGenerator(name = "cart_item_seq", sequenceName = "cart_item_seq", allocationSize = 50)
+	@JsonIgnore
+	private @Getter @Setter Long id;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "cart_id", nullable = false)
+	@JsonIgnore
+	private @Getter @Setter Cart cart;
+
+	@ManyToOne
+	@JoinColumn(name = "item_id", nullable = false)
+	@JsonProperty
+	private @Getter Item item;
+
+	/**
+	 * Read-only copy of the item foreign key, used as the key of {@link Cart#getItems()}.
+	 */
+	@Column(name = "item_id", insertable = false, updatable = false)
+	@JsonIgnore
+	private @Getter Long itemId;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private @Getter @Setter int quantity;
+
+	/**
+	 * Unit price in minor units, exposed in JSON as the decimal unitPrice.
+	 */
+	@Column(name = "unit_price_cents", nullable = false)
+	@JsonIgnore
+	private @Getter @Setter long unitPriceCents;
+
+	public CartItem() {
+	}
+
+	public CartItem(Cart cart, Item item, int quantity) {
+		this.cart = cart;
+		this.item = item;
+		this.itemId = item.getId();
+		this.quantity = quantity;
+		this.unitPriceCents = item.getPriceCents();
+	}
+
+	@JsonProperty
+	public BigDecimal getUnitPrice() {
+		return Money.fromMinorUnits(unitPriceCents);
+	}
+
+	@JsonIgnore
+	public long getSubtotalCents() {
+		return Money.times(unitPriceCents, quantity);
+	}
+
+	@JsonProperty
+	public BigDecimal getSubtotal() {
+		return Money.fromMinorUnits(getSubtotalCents());
+	}
+}
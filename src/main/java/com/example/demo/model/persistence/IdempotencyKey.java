@@ -0,0 +1,55 @@
+package com.example.demo.model.persistence;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.Version;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Idempotency-Key sent with an order submit, and the order it created. Written in the submit transaction, so
+ * a key is recorded exactly when its order is, see {@link com.example.demo.service.IdempotencyKeys}.
+ */
+@Entity
+@Table(name = "idempotency_key")
+@ToString
+public class IdempotencyKey {
+
+	/**
+	 * The client key scoped to its user, so two users may send the same key. Wide enough for the longest: three
+	 * digits of username length, a 255 character username and a 255 character key with their two separators.
+	 */
+	@Id
+	@Column(name = "scoped_key", length = 515)
+	private @Getter String scopedKey;
+
+	@Column(name = "order_id", nullable = false)
+	private @Getter @Setter long orderId;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(nullable = false)
+	private @Getter @Setter Date created;
+
+	/**
+	 * Null until stored, which makes the repository insert a new key without reading it first.
+	 */
+	@Version
+	private Long version;
+
+	public IdempotencyKey() {
+	}
+
+	public IdempotencyKey(String scopedKey, long orderId, Date created) {
+		this.scopedKey = scopedKey;
+		this.orderId = orderId;
+		this.created = created;
+	}
+}
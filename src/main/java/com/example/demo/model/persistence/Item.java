@@ -7,9 +7,14 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.BatchSize;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -18,12 +23,14 @@ import lombok.Getter;
 import lombok.Setter;
 
 @Entity
-@Table(name = "item")
-@EqualsAndHashCode
+@Table(name = "item", indexes = @Index(name = "idx_item_name", columnList = "name"))
+@BatchSize(size = 50)
+@EqualsAndHashCode(exclude = "version")
 public class Item {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_seq")
+	@SequenceGenerator(name = "item_seq", sequenceName = "item_seq", allocationSize = 50)
 	@JsonProperty
 	private @Getter @Setter Long id;
 	
@@ -31,25 +38,52 @@ public class Item {
 	@JsonProperty
 	private @Getter @Setter String name;
 	
-	@Column(nullable = false)
-	@JsonProperty
-	private @Getter @Setter BigDecimal price;
+	/**
+	 * Price in minor units of {@link Money#CURRENCY}, exposed in JSON as the decimal price.
+	 */
+	@Column(name = "price_cents", nullable = false)
+	@JsonIgnore
+	private @Getter @Setter long priceCents;
 	
 	@Column(nullable = false)
 	@JsonProperty
 	private @Getter @Setter String description;
 
+	/**
+	 * Incremented on every update, the item ETag is built from it.
+	 */
+	@Version
+	@Column(nullable = false)
+	@JsonIgnore
+	private @Getter @Setter long version;
+
 	public Item() {
 	}
 
 	public Item(Long id, String name, BigDecimal price, String description) {
+		this(id, name, Money.toMinorUnits(price), description);
+	}
+
+	public Item(Long id, String name, long priceCents, String description) {
 		this.id = id;
 		this.name = name;
-		this.price = price;
+		this.priceCents = priceCents;
 		this.description = description;
 	}
 
+	@JsonProperty
+	public BigDecimal getPrice() {
+		return Money.fromMinorUnits(priceCents);
+	}
+
+	@JsonProperty
+	public void setPrice(BigDecimal price) {
+		this.priceCents = Money.toMinorUnits(price);
+	}
+
 	public Item clone() {
-		return new Item(this.id, this.name, this.price, this.description);
+		Item clone = new Item(this.id, this.name, this.priceCents, this.description);
+		clone.version = this.version;
+		return clone;
 	}
 }
@@ -0,0 +1,39 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+
+/**
+ * Amounts are stored and computed as a long count of minor units (cents) of the store currency, so cart and
+ * order arithmetic does not allocate. BigDecimal is only used at the JSON boundary.
+ */
+public final class Money {
+
+	public static final Currency CURRENCY = Currency.getInstance("USD");
+
+	private static final int SCALE = CURRENCY.getDefaultFractionDigits();
+
+	private Money() {
+	}
+
+	/**
+	 * The amount in minor units, rounded half up to the precision of the currency.
+	 * @param amount
+	 * @return
+	 */
+	public static long toMinorUnits(BigDecimal amount) {
+		return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	public static BigDecimal fromMinorUnits(long minorUnits) {
+		return BigDecimal.valueOf(minorUnits, SCALE);
+	}
+
+	/**
+	 * Price of quantity units, failing rather than overflowing.
+	 */
+	public static long times(long unitMinorUnits, int quantity) {
+		return Math.multiplyExact(unitMinorUnits, quantity);
+	}
+}
@@ -0,0 +1,22 @@
+package com.example.demo.model.persistence;
+
+import java.io.Serializable;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+/**
+ * The pooled user_order_seq sequence, keeping the id of an order that already has one. An asynchronous checkout
+ * takes the id of its order from this generator when it is accepted, and the order is written with it later.
+ */
+public class OrderIdGenerator extends SequenceStyleGenerator {
+
+	@Override
+	public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+		if (object instanceof UserOrder && ((UserOrder) object).getId() != null) {
+			return ((UserOrder) object).getId();
+		}
+		return super.generate(session, object);
+	}
+}
@@ -0,0 +1,59 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * One line of an order, copied from a cart line at checkout. Order lines are never modified after the order
+ * is written, so they are stored as an element collection of the order.
+ */
+@Embeddable
+@EqualsAndHashCode
+@ToString
+public class OrderItem {
+
+	@ManyToOne
+	@JoinColumn(name = "item_id", nullable = false)
+	@JsonProperty
+	private @Getter @Setter Item item;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private @Getter @Setter int quantity;
+
+	/**
+	 * Unit price in minor units when the order was placed, exposed in JSON as the decimal unitPrice.
+	 */
+	@Column(name = "unit_price_cents", nullable = false)
+	@JsonIgnore
+	private @Getter @Setter long unitPriceCents;
+
+	public OrderItem() {
+	}
+
+	public OrderItem(Item item, int quantity, long unitPriceCents) {
+		this.item = item;
+		this.quantity = quantity;
+		this.unitPriceCents = unitPriceCents;
+	}
+
+	@JsonProperty
+	public BigDecimal getUnitPrice() {
+		return Money.fromMinorUnits(unitPriceCents);
+	}
+
+	public static OrderItem createFromCartItem(CartItem line) {
+		return new OrderItem(line.getItem(), line.getQuantity(), line.getUnitPriceCents());
+	}
+}
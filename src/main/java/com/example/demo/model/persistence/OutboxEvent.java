@@ -0,0 +1,66 @@
+package com.example.demo.model.persistence;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Event waiting in the outbox, written in the transaction of the change it describes and deleted once
+ * delivered, see {@link com.example.demo.outbox.OutboxRelay}.
+ */
+@Entity
+@Table(name = "outbox_event")
+@ToString
+public class OutboxEvent {
+
+	/**
+	 * Taken from the database sequence one at a time, never from a block held by one instance: the submit
+	 * appends its event once it holds the cart row, so a user's later event always gets a higher id.
+	 */
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+	@SequenceGenerator(name = "outbox_event_seq", sequenceName = "outbox_event_seq", allocationSize = 1)
+	private @Getter Long id;
+
+	@Column(name = "event_type", nullable = false, length = 64)
+	private @Getter String type;
+
+	/**
+	 * The user the event is about; the events of a user are delivered in the order they were written.
+	 */
+	@Column(name = "user_id", nullable = false)
+	private @Getter long userId;
+
+	/**
+	 * The event as JSON.
+	 */
+	@Lob
+	@Column(nullable = false)
+	private @Getter String payload;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(nullable = false)
+	private @Getter Date created;
+
+	public OutboxEvent() {
+	}
+
+	public OutboxEvent(String type, long userId, String payload, Date created) {
+		this.type = type;
+		this.userId = userId;
+		this.payload = payload;
+		this.created = created;
+	}
+}
@@ -0,0 +1,43 @@
+package com.example.demo.model.persistence;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Stock of an item: units on hand and units held by carts. Items without a stock row are not stock-tracked.
+ * The application keeps the live counters in memory and writes them here behind the requests, see
+ * {@link com.example.demo.service.InventoryService}.
+ */
+@Entity
+@Table(name = "stock")
+@ToString
+public class Stock {
+
+	@Id
+	@Column(name = "item_id")
+	private @Getter @Setter Long itemId;
+
+	@Column(name = "on_hand", nullable = false)
+	private @Getter @Setter long onHand;
+
+	/**
+	 * Units reserved by carts when last written; reservations live in memory, so this is for reporting only.
+	 */
+	@Column(nullable = false)
+	private @Getter @Setter long reserved;
+
+	public Stock() {
+	}
+
+	public Stock(Long itemId, long onHand, long reserved) {
+		this.itemId = itemId;
+		this.onHand = onHand;
+		this.reserved = reserved;
+	}
+}
@@ -0,0 +1,26 @@
+package com.example.demo.model.persistence;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * What resolving a username needs of a user: its id, username and password hash. Built directly by the query,
+ * never managed by JPA and never written to a response.
+ */
+@EqualsAndHashCode
+@ToString(exclude = "password")
+public class UserCredentials {
+
+	private final @Getter long id;
+
+	private final @Getter String username;
+
+	private final @Getter String password;
+
+	public UserCredentials(long id, String username, String password) {
+		this.id = id;
+		this.username = username;
+		this.password = password;
+	}
+}
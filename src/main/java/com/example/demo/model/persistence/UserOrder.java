@@ -4,18 +4,23 @@ import java.math.BigDecimal;
 import java.util.List;
 import java.util.stream.Collectors;
 
-import javax.persistence.CascadeType;
+import javax.persistence.CollectionTable;
 import javax.persistence.Column;
+import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
-import javax.persistence.JoinTable;
-import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 @Entity
@@ -23,24 +28,45 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 public class UserOrder {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_order_seq")
+	@GenericGenerator(name = "user_order_seq", strategy = "com.example.demo.model.persistence.OrderIdGenerator",
+			parameters = {
+					@Parameter(name = "sequence_name", value = "user_order_seq"),
+					@Parameter(name = "increment_size", value = "50"),
+					@Parameter(name = "optimizer", value = "pooled")})
 	@JsonProperty
 	@Column
 	private Long id;
 	
-	@ManyToMany(cascade = CascadeType.ALL)
+	/**
+	 * Order lines, inserted as one JDBC batch with the order (see hibernate.jdbc.batch_size).
+	 * When listing orders, the lines of up to 50 orders are loaded with one query.
+	 */
+	@ElementCollection
+	@BatchSize(size = 50)
+	@CollectionTable(name = "user_order_item", joinColumns = @JoinColumn(name = "order_id"))
 	@JsonProperty
-	@Column
-    private List<Item> items;
+    private List<OrderItem> items;
 	
 	@ManyToOne
 	@JoinColumn(name="user_id", nullable = false, referencedColumnName = "id")
 	@JsonProperty
     private User user;
 	
-	@JsonProperty
-	@Column
-	private BigDecimal total;
+	/**
+	 * Order total in minor units of {@link Money#CURRENCY}, exposed in JSON as the decimal total.
+	 */
+	@JsonIgnore
+	@Column(name = "total_cents", nullable = false)
+	private long totalCents;
+
+	/**
+	 * Optimistic lock: a concurrent change of the same order fails instead of overwriting the other one.
+	 */
+	@Version
+	@Column(nullable = false)
+	@JsonIgnore
+	private long version;
 
 	public Long getId() {
 		return id;
@@ -50,11 +76,11 @@ public class UserOrder {
 		this.id = id;
 	}
 
-	public List<Item> getItems() {
+	public List<OrderItem> getItems() {
 		return items;
 	}
 
-	public void setItems(List<Item> items) {
+	public void setItems(List<OrderItem> items) {
 		this.items = items;
 	}
 
@@ -66,18 +92,36 @@ public class UserOrder {
 		this.user = user;
 	}
 	
+	@JsonProperty
 	public BigDecimal getTotal() {
-		return total;
+		return Money.fromMinorUnits(totalCents);
+	}
+
+	@JsonProperty
+	public String getCurrency() {
+		return Money.CURRENCY.getCurrencyCode();
+	}
+
+	public long getTotalCents() {
+		return totalCents;
+	}
+
+	public void setTotalCents(long totalCents) {
+		this.totalCents = totalCents;
+	}
+
+	public long getVersion() {
+		return version;
 	}
 
-	public void setTotal(BigDecimal total) {
-		this.total = total;
+	public void setVersion(long version) {
+		this.version = version;
 	}
 
 	public static UserOrder createFromCart(Cart cart) {
 		UserOrder order = new UserOrder();
-		order.setItems(cart.getItems().stream().collect(Collectors.toList()));
-		order.setTotal(cart.getTotal());
+		order.setItems(cart.getItems().stream().map(OrderItem::createFromCartItem).collect(Collectors.toList()));
+		order.setTotalCents(cart.getTotalCents());
 		order.setUser(cart.getUser());
 		return order;
 	}
@@ -1,8 +1,14 @@
 package com.example.demo.model.persistence.repositories;
 
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartItem;
 import com.example.demo.model.persistence.User;
 
 import org.springframework.stereotype.Repository;
@@ -10,4 +16,19 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface CartRepository extends JpaRepository<Cart, Long> {
 	Cart findByUser(User user);
+
+	/**
+	 * Delete every line of the cart with one statement. The persistence context is cleared afterwards, so
+	 * pending changes must be flushed before calling this.
+	 */
+	@Modifying(clearAutomatically = true)
+	@Query("delete from CartItem l where l.cart.id = :cartId")
+	int deleteItemsByCartId(@Param("cartId") Long cartId);
+
+	/**
+	 * Cart lines of the item whose unit price differs from the given one, with their carts and the carts' users.
+	 */
+	@Query("select l from CartItem l join fetch l.cart c left join fetch c.user "
+			+ "where l.itemId = :itemId and l.unitPriceCents <> :priceCents")
+	List<CartItem> findLinesToReprice(@Param("itemId") Long itemId, @Param("priceCents") long priceCents);
 }
@@ -0,0 +1,24 @@
+package com.example.demo.model.persistence.repositories;
+
+import java.util.Date;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.persistence.IdempotencyKey;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+
+	/**
+	 * Delete the keys written before cutoff with one statement.
+	 */
+	@Modifying
+	@Transactional
+	@Query("delete from IdempotencyKey k where k.created < :cutoff")
+	int deleteByCreatedBefore(@Param("cutoff") Date cutoff);
+}
@@ -1,14 +1,38 @@
 package com.example.demo.model.persistence.repositories;
 
 import java.util.List;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import com.example.demo.model.persistence.Item;
+import com.example.demo.model.responses.ItemSummary;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface ItemRepository extends JpaRepository<Item, Long> {
 	List<Item> findByName(String name);
 
+	/**
+	 * Page of the catalog selecting only id, name and price.
+	 */
+	@Query(value = "select new com.example.demo.model.responses.ItemSummary(i.id, i.name, i.priceCents) from Item i",
+			countQuery = "select count(i) from Item i")
+	Page<ItemSummary> findSummaries(Pageable pageable);
+
+	/**
+	 * Whole catalog by id, read forward-only in batches of 50 rows. The items are built by a constructor
+	 * expression so they are not attached to the persistence context. The stream must be consumed and
+	 * closed inside a transaction.
+	 */
+	@QueryHints(@QueryHint(name = QueryHints.HINT_FETCH_SIZE, value = "50"))
+	@Query("select new com.example.demo.model.persistence.Item(i.id, i.name, i.priceCents, i.description) from Item i order by i.id")
+	Stream<Item> streamCatalog();
+
 }
@@ -1,8 +1,17 @@
 package com.example.demo.model.persistence.repositories;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
@@ -11,4 +20,30 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface OrderRepository extends JpaRepository<UserOrder, Long> {
 	List<UserOrder> findByUser(User user);
+
+	/**
+	 * The order with its user and lines, ready to serialize outside the transaction.
+	 */
+	@EntityGraph(attributePaths = {"user", "items"})
+	Optional<UserOrder> findWithItemsById(Long id);
+
+	/**
+	 * First page of the user's orders, newest first, with their user. Only the page size of the pageable is used.
+	 */
+	@EntityGraph(attributePaths = "user")
+	List<UserOrder> findByUserIdOrderByIdDesc(long userId, Pageable pageable);
+
+	/**
+	 * Next page of the user's orders, newest first, starting after the order with the given id (keyset cursor).
+	 */
+	@EntityGraph(attributePaths = "user")
+	List<UserOrder> findByUserIdAndIdLessThanOrderByIdDesc(long userId, Long id, Pageable pageable);
+
+	/**
+	 * All orders of the user, newest first, read through a forward-only cursor. Must be consumed and closed
+	 * inside a transaction.
+	 */
+	@QueryHints(@QueryHint(name = QueryHints.HINT_FETCH_SIZE, value = "50"))
+	@Query("select o from UserOrder o join fetch o.user where o.user.id = :userId order by o.id desc")
+	Stream<UserOrder> streamByUserId(@Param("userId") long userId);
 }
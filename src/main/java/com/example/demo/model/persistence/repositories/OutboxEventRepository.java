@@ -0,0 +1,29 @@
+package com.example.demo.model.persistence.repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.model.persistence.OutboxEvent;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+	/**
+	 * The oldest events not delivered yet, in the order they were written.
+	 */
+	List<OutboxEvent> findAllByOrderByIdAsc(Pageable page);
+
+	/**
+	 * Delete the delivered events with one statement.
+	 */
+	@Modifying
+	@Query("delete from OutboxEvent e where e.id in :ids")
+	int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,10 @@
+package com.example.demo.model.persistence.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.demo.model.persistence.Stock;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StockRepository extends JpaRepository<Stock, Long> {
+}
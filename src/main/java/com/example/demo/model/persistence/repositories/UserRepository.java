@@ -1,11 +1,38 @@
 package com.example.demo.model.persistence.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserCredentials;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 	User findByUsername(String username);
+
+	/**
+	 * Id, username and password hash of the user, without loading the entity.
+	 */
+	@Query("select new com.example.demo.model.persistence.UserCredentials(u.id, u.username, u.password) from User u where u.username = :username")
+	UserCredentials findCredentialsByUsername(@Param("username") String username);
+
+	/**
+	 * Load the user together with the cart, its lines and their items in a single query. The cart's side of the
+	 * user association is fetched too, otherwise Hibernate resolves it with a query of its own.
+	 */
+	@Query("select distinct u from User u left join fetch u.cart c left join fetch c.user left join fetch c.items l "
+			+ "left join fetch l.item where u.username = :username")
+	User findWithCartByUsername(@Param("username") String username);
+
+	/**
+	 * The users with their carts, lines and items in a single query, as {@link #findWithCartByUsername(String)}.
+	 */
+	@Query("select distinct u from User u left join fetch u.cart c left join fetch c.user left join fetch c.items l "
+			+ "left join fetch l.item where u.id in :ids")
+	List<User> findWithCartByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,26 @@
+package com.example.demo.model.requests;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+
+/**
+ * Changes of one user's cart, applied in order and all or nothing.
+ */
+@NoArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class BulkModifyCartRequest {
+
+	@JsonProperty
+	private @Getter @Setter String username;
+
+	@JsonProperty
+	private @Getter @Setter List<CartOperation> operations;
+
+	public BulkModifyCartRequest(String username, List<CartOperation> operations) {
+		this.username = username;
+		this.operations = operations;
+	}
+}
@@ -0,0 +1,32 @@
+package com.example.demo.model.requests;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+
+/**
+ * One change of a bulk cart modification: add or remove quantity units of the item, or set its quantity.
+ */
+@NoArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class CartOperation {
+
+	public enum Type {
+		ADD, REMOVE, SET
+	}
+
+	@JsonProperty
+	private @Getter @Setter Type type;
+
+	@JsonProperty
+	private @Getter @Setter long itemId;
+
+	@JsonProperty
+	private @Getter @Setter int quantity;
+
+	public CartOperation(Type type, long itemId, int quantity) {
+		this.type = type;
+		this.itemId = itemId;
+		this.quantity = quantity;
+	}
+}
@@ -0,0 +1,44 @@
+package com.example.demo.model.requests;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Credentials posted to /login.
+ */
+public class LoginRequest {
+
+	@JsonProperty
+	private String username;
+
+	@JsonProperty
+	private String password;
+
+	public LoginRequest() {
+	}
+
+	public LoginRequest(String username, String password) {
+		this.username = username;
+		this.password = password;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	@Override
+	public String toString() {
+		return "LoginRequest [username=" + username + "]";
+	}
+}
@@ -0,0 +1,49 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+
+import com.example.demo.model.persistence.CartItem;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * One line of a {@link CartResponse}: the item, its quantity, unit price and subtotal.
+ */
+@EqualsAndHashCode
+@ToString
+public class CartLineResponse {
+
+	@JsonProperty
+	private @Getter Item item;
+
+	@JsonProperty
+	private @Getter int quantity;
+
+	@JsonIgnore
+	private @Getter long unitPriceCents;
+
+	public CartLineResponse(Item item, int quantity, long unitPriceCents) {
+		this.item = item;
+		this.quantity = quantity;
+		this.unitPriceCents = unitPriceCents;
+	}
+
+	public static CartLineResponse from(CartItem line) {
+		return new CartLineResponse(line.getItem(), line.getQuantity(), line.getUnitPriceCents());
+	}
+
+	@JsonProperty
+	public BigDecimal getUnitPrice() {
+		return Money.fromMinorUnits(unitPriceCents);
+	}
+
+	@JsonProperty
+	public BigDecimal getSubtotal() {
+		return Money.fromMinorUnits(Money.times(unitPriceCents, quantity));
+	}
+}
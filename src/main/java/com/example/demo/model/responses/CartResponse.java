@@ -0,0 +1,67 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Cart as returned by the cart endpoints. Assembled from a cart fetched with its user, lines and items, so
+ * writing it never reaches back into the persistence context; the JSON is the same as the cart entity's.
+ */
+@EqualsAndHashCode
+@ToString
+public class CartResponse {
+
+	@JsonProperty
+	private @Getter Long id;
+
+	@JsonProperty
+	private @Getter List<CartLineResponse> items;
+
+	@JsonProperty
+	private @Getter UserResponse user;
+
+	@JsonIgnore
+	private @Getter long totalCents;
+
+	public CartResponse(Long id, List<CartLineResponse> items, UserResponse user, long totalCents) {
+		this.id = id;
+		this.items = items;
+		this.user = user;
+		this.totalCents = totalCents;
+	}
+
+	public static CartResponse from(Cart cart) {
+		List<CartLineResponse> lines = cart.getItems().stream().map(CartLineResponse::from).collect(Collectors.toList());
+		UserResponse user = cart.getUser() == null ? null : UserResponse.from(cart.getUser());
+		return new CartResponse(cart.getId(), lines, user, cart.getTotalCents());
+	}
+
+	@JsonProperty
+	public BigDecimal getTotal() {
+		return Money.fromMinorUnits(totalCents);
+	}
+
+	@JsonProperty
+	public String getCurrency() {
+		return Money.CURRENCY.getCurrencyCode();
+	}
+
+	/**
+	 * Return the line holding the given item, or null when the item is not in the cart.
+	 * @param itemId
+	 * @return
+	 */
+	@JsonIgnore
+	public CartLineResponse getLine(Long itemId) {
+		return items.stream().filter(line -> line.getItem().getId().equals(itemId)).findFirst().orElse(null);
+	}
+}
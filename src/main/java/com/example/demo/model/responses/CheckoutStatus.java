@@ -0,0 +1,48 @@
+package com.example.demo.model.responses;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Where an accepted checkout stands. A failed checkout carries the message and HTTP status a synchronous submit
+ * would have answered with.
+ */
+@EqualsAndHashCode
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CheckoutStatus {
+
+	public enum State {
+		QUEUED, PROCESSING, COMPLETED, FAILED
+	}
+
+	@JsonProperty
+	private @Getter long orderId;
+
+	@JsonProperty
+	private @Getter State state;
+
+	@JsonProperty
+	private @Getter String error;
+
+	@JsonProperty
+	private @Getter Integer errorStatus;
+
+	public CheckoutStatus(long orderId, State state, String error, Integer errorStatus) {
+		this.orderId = orderId;
+		this.state = state;
+		this.error = error;
+		this.errorStatus = errorStatus;
+	}
+
+	public static CheckoutStatus of(long orderId, State state) {
+		return new CheckoutStatus(orderId, state, null, null);
+	}
+
+	public static CheckoutStatus failed(long orderId, String error, int errorStatus) {
+		return new CheckoutStatus(orderId, State.FAILED, error, errorStatus);
+	}
+}
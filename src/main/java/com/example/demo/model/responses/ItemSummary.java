@@ -0,0 +1,38 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+
+import com.example.demo.model.persistence.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Catalog listing row: an item without its description. Built directly by the query, never managed by JPA.
+ */
+@EqualsAndHashCode
+@ToString
+public class ItemSummary {
+
+	@JsonProperty
+	private @Getter Long id;
+
+	@JsonProperty
+	private @Getter String name;
+
+	@JsonIgnore
+	private @Getter long priceCents;
+
+	public ItemSummary(Long id, String name, long priceCents) {
+		this.id = id;
+		this.name = name;
+		this.priceCents = priceCents;
+	}
+
+	@JsonProperty
+	public BigDecimal getPrice() {
+		return Money.fromMinorUnits(priceCents);
+	}
+}
@@ -0,0 +1,37 @@
+package com.example.demo.model.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Live stock of an item: units on hand, units held by carts and units still available to reserve.
+ */
+@EqualsAndHashCode
+@ToString
+public class StockLevel {
+
+	@JsonProperty
+	private @Getter long itemId;
+
+	@JsonProperty
+	private @Getter boolean tracked;
+
+	@JsonProperty
+	private @Getter long onHand;
+
+	@JsonProperty
+	private @Getter long reserved;
+
+	@JsonProperty
+	private @Getter long available;
+
+	public StockLevel(long itemId, boolean tracked, long onHand, long reserved, long available) {
+		this.itemId = itemId;
+		this.tracked = tracked;
+		this.onHand = onHand;
+		this.reserved = reserved;
+		this.available = available;
+	}
+}
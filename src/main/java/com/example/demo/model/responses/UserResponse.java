@@ -0,0 +1,30 @@
+package com.example.demo.model.responses;
+
+import com.example.demo.model.persistence.User;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The public part of a user embedded in cart responses: id and username, never the cart or the password.
+ */
+@EqualsAndHashCode
+@ToString
+public class UserResponse {
+
+	@JsonProperty
+	private @Getter long id;
+
+	@JsonProperty
+	private @Getter String username;
+
+	public UserResponse(long id, String username) {
+		this.id = id;
+		this.username = username;
+	}
+
+	public static UserResponse from(User user) {
+		return new UserResponse(user.getId(), user.getUsername());
+	}
+}
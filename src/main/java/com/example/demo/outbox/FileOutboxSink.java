@@ -0,0 +1,70 @@
+package com.example.demo.outbox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.persistence.OutboxEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Appends the events to outbox.file.path, one JSON object per line, and forces them to disk before the batch
+ * counts as delivered. Used with outbox.sink=file.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.sink", havingValue = "file")
+public class FileOutboxSink implements OutboxSink {
+
+	private final Path path;
+
+	private final ObjectMapper objectMapper;
+
+	@Autowired
+	public FileOutboxSink(@Value("${outbox.file.path:outbox-events.jsonl}") String path, ObjectMapper objectMapper) {
+		this(Paths.get(path), objectMapper);
+	}
+
+	public FileOutboxSink(Path path, ObjectMapper objectMapper) {
+		this.path = path;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public void publish(List<OutboxEvent> events) throws IOException {
+		ByteArrayOutputStream lines = new ByteArrayOutputStream();
+		for (OutboxEvent event : events) {
+			ObjectNode line = objectMapper.createObjectNode();
+			line.put("id", event.getId());
+			line.put("type", event.getType());
+			line.put("userId", event.getUserId());
+			line.put("created", event.getCreated().getTime());
+			line.set("payload", objectMapper.readTree(event.getPayload()));
+			lines.write(objectMapper.writeValueAsBytes(line));
+			lines.write('\n');
+		}
+		Path parent = path.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND)) {
+			ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+	}
+}
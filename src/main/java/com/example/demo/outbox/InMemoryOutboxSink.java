@@ -0,0 +1,57 @@
+package com.example.demo.outbox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.persistence.OutboxEvent;
+
+/**
+ * Keeps the last outbox.memory.capacity delivered events in memory, for tests and local runs.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.sink", havingValue = "memory", matchIfMissing = true)
+public class InMemoryOutboxSink implements OutboxSink {
+
+	private final int capacity;
+
+	/**
+	 * Delivered events, oldest first. Guarded by itself.
+	 */
+	private final ArrayDeque<OutboxEvent> events = new ArrayDeque<>();
+
+	public InMemoryOutboxSink(@Value("${outbox.memory.capacity:10000}") int capacity) {
+		this.capacity = Math.max(1, capacity);
+	}
+
+	@Override
+	public void publish(List<OutboxEvent> batch) {
+		synchronized (events) {
+			for (OutboxEvent event : batch) {
+				if (events.size() == capacity) {
+					events.removeFirst();
+				}
+				events.addLast(event);
+			}
+		}
+	}
+
+	/**
+	 * The events delivered, oldest first.
+	 */
+	public List<OutboxEvent> events() {
+		synchronized (events) {
+			return new ArrayList<>(events);
+		}
+	}
+
+	public void clear() {
+		synchronized (events) {
+			events.clear();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.demo.outbox;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.demo.model.persistence.OutboxEvent;
+import com.example.demo.model.persistence.repositories.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes events to the outbox table in the caller's transaction, so an event exists exactly when the change it
+ * describes was committed. Listeners are told once the transaction commits, so the relay need not wait for its
+ * next poll.
+ */
+@Component
+public class Outbox {
+
+	private final OutboxEventRepository outboxEventRepository;
+
+	private final ObjectMapper objectMapper;
+
+	private final List<Runnable> commitListeners = new CopyOnWriteArrayList<>();
+
+	@Autowired
+	public Outbox(OutboxEventRepository outboxEventRepository, ObjectMapper objectMapper) {
+		this.outboxEventRepository = outboxEventRepository;
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Write the event in the caller's transaction.
+	 * @param type
+	 * @param userId the user the event is about, its events are delivered in order
+	 * @param payload written as JSON
+	 */
+	public void append(String type, long userId, Object payload) {
+		String json;
+		try {
+			json = objectMapper.writeValueAsString(payload);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException("Event payload cannot be written as JSON: " + type, e);
+		}
+		// flushed now, a bulk statement of the caller clearing the persistence context cannot drop it
+		outboxEventRepository.saveAndFlush(new OutboxEvent(type, userId, json, new Date()));
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					committed();
+				}
+			});
+		} else {
+			committed();
+		}
+	}
+
+	/**
+	 * Run listener after every commit of a transaction that wrote events.
+	 */
+	public void onCommit(Runnable listener) {
+		commitListeners.add(listener);
+	}
+
+	private void committed() {
+		for (Runnable listener : commitListeners) {
+			listener.run();
+		}
+	}
+}
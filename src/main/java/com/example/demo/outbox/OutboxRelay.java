@@ -0,0 +1,221 @@
+package com.example.demo.outbox;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.OutboxEvent;
+import com.example.demo.model.persistence.repositories.OutboxEventRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Drains the outbox table to the {@link OutboxSink} from a single background thread, oldest events first, up
+ * to outbox.relay.batch-size events per delivery. A batch not full yet is held until its oldest event has waited
+ * outbox.relay.linger-millis, so a busy outbox is delivered in full batches and a quiet one without delay.
+ * Delivered events are deleted; a batch whose delivery or deletion failed is delivered again after
+ * outbox.relay.retry-millis, at least once and in the same order, holding back the events behind it.
+ * A submit takes the id of its event from the database sequence after it locked the cart row, so a user's
+ * second submit, waiting for the first on the cart, gets a higher id on any instance; delivering in id order
+ * keeps each user's events in order. That takes one relay for the database:
+ * disable it with outbox.relay.enabled=false on every other instance.
+ * Commits that wrote events wake the relay; it reads the outbox every outbox.relay.poll-millis otherwise.
+ * Published metrics: outbox.relay.events (delivered), outbox.relay.failures, outbox.relay.publish (time to
+ * deliver a batch) and outbox.relay.lag, from the writing of an event to its delivery.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelay {
+
+	private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+	private final OutboxEventRepository outboxEventRepository;
+
+	private final OutboxSink sink;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final int batchSize;
+
+	private final long lingerMillis;
+
+	private final long pollMillis;
+
+	private final long retryMillis;
+
+	private final Object wakeUp = new Object();
+
+	/**
+	 * Events committed since the relay last waited, and how many it waits for. Guarded by wakeUp.
+	 */
+	private int committed;
+
+	private int awaited = 1;
+
+	/**
+	 * Events missing from the batch last read, relay thread only.
+	 */
+	private int missing = 1;
+
+	private final Counter delivered;
+
+	private final Counter failures;
+
+	private final Timer publishTimer;
+
+	private final Timer lag;
+
+	private volatile boolean running;
+
+	private Thread relay;
+
+	@Autowired
+	public OutboxRelay(OutboxEventRepository outboxEventRepository, OutboxSink sink, Outbox outbox,
+			PlatformTransactionManager transactionManager,
+			@Value("${outbox.relay.batch-size:100}") int batchSize,
+			@Value("${outbox.relay.linger-millis:50}") long lingerMillis,
+			@Value("${outbox.relay.poll-millis:1000}") long pollMillis,
+			@Value("${outbox.relay.retry-millis:1000}") long retryMillis,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		this(outboxEventRepository, sink, outbox, transactionManager, batchSize, lingerMillis, pollMillis, retryMillis,
+				meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+	}
+
+	public OutboxRelay(OutboxEventRepository outboxEventRepository, OutboxSink sink, Outbox outbox,
+			PlatformTransactionManager transactionManager, int batchSize, long lingerMillis, long pollMillis,
+			long retryMillis, MeterRegistry meterRegistry) {
+		this.outboxEventRepository = outboxEventRepository;
+		this.sink = sink;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.batchSize = Math.max(1, batchSize);
+		this.lingerMillis = lingerMillis;
+		this.pollMillis = pollMillis;
+		this.retryMillis = retryMillis;
+		this.delivered = Counter.builder("outbox.relay.events")
+				.description("Outbox events delivered to the sink")
+				.register(meterRegistry);
+		this.failures = Counter.builder("outbox.relay.failures")
+				.description("Outbox batches whose delivery failed and is retried")
+				.register(meterRegistry);
+		this.publishTimer = Timer.builder("outbox.relay.publish")
+				.description("Time spent delivering a batch of outbox events")
+				.register(meterRegistry);
+		this.lag = Timer.builder("outbox.relay.lag")
+				.description("Time from writing an outbox event to its delivery")
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+		outbox.onCommit(this::committed);
+	}
+
+	@PostConstruct
+	public void start() {
+		running = true;
+		relay = new Thread(this::run, "outbox-relay");
+		relay.setDaemon(true);
+		relay.start();
+	}
+
+	/**
+	 * Stop once the batch in delivery is done. Events not delivered stay in the outbox for the next start.
+	 * @throws InterruptedException
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		running = false;
+		if (relay != null) {
+			synchronized (wakeUp) {
+				wakeUp.notifyAll();
+			}
+			relay.join(5000);
+		}
+	}
+
+	private void run() {
+		while (running) {
+			long waitMillis;
+			try {
+				waitMillis = relay();
+			} catch (IOException | RuntimeException e) {
+				failures.increment();
+				log.warn("event=outbox_relay_failed retry_millis={}", retryMillis, e);
+				waitMillis = retryMillis;
+				missing = Integer.MAX_VALUE;
+			}
+			if (waitMillis > 0) {
+				try {
+					await(waitMillis, missing);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deliver the oldest events if they fill a batch or the oldest of them has waited linger-millis.
+	 * @return how long to wait for more events before the next call, 0 to call again at once
+	 * @throws IOException when the sink failed, the events are left in the outbox
+	 */
+	long relay() throws IOException {
+		List<OutboxEvent> batch = outboxEventRepository.findAllByOrderByIdAsc(PageRequest.of(0, batchSize));
+		if (batch.isEmpty()) {
+			missing = 1;
+			return pollMillis;
+		}
+		long waited = System.currentTimeMillis() - batch.get(0).getCreated().getTime();
+		if (batch.size() < batchSize && waited < lingerMillis) {
+			missing = batchSize - batch.size();
+			return lingerMillis - waited;
+		}
+		long start = System.nanoTime();
+		sink.publish(batch);
+		publishTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		List<Long> ids = batch.stream().map(OutboxEvent::getId).collect(Collectors.toList());
+		// a failure from here on delivers the batch again, which at-least-once allows
+		transactionTemplate.execute(status -> outboxEventRepository.deleteByIdIn(ids));
+		delivered.increment(batch.size());
+		long now = System.currentTimeMillis();
+		for (OutboxEvent event : batch) {
+			lag.record(now - event.getCreated().getTime(), TimeUnit.MILLISECONDS);
+		}
+		return 0;
+	}
+
+	private void committed() {
+		synchronized (wakeUp) {
+			committed++;
+			if (committed >= awaited) {
+				wakeUp.notifyAll();
+			}
+		}
+	}
+
+	private void await(long millis, int events) throws InterruptedException {
+		synchronized (wakeUp) {
+			awaited = events;
+			if (committed < events && running) {
+				wakeUp.wait(millis);
+			}
+			committed = 0;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package com.example.demo.outbox;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.example.demo.model.persistence.OutboxEvent;
+
+/**
+ * Where the relay delivers outbox events: a broker, a file, memory. Chosen with outbox.sink.
+ * Delivery is at least once: a batch that failed, or whose delivery could not be recorded, is published again,
+ * so consumers drop the event ids they already processed.
+ */
+public interface OutboxSink {
+
+	/**
+	 * Deliver the events in the order given, which keeps the events of each user in the order they were written.
+	 * Returns once every event is delivered.
+	 * @param events
+	 * @throws IOException when some events may not have been delivered
+	 */
+	void publish(List<OutboxEvent> events) throws IOException;
+}
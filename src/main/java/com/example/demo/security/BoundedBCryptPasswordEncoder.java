@@ -0,0 +1,118 @@
+package com.example.demo.security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.example.demo.exceptions.APIServiceUnavailableException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * BCrypt encoder running every hash and verification on a dedicated, fixed-size pool with a bounded queue,
+ * so a login burst cannot take more CPU than the pool has threads. When the queue is full the call fails fast
+ * with a 503 instead of piling up on the request threads.
+ * Hashes made with a lower cost than the configured strength are reported as needing an upgrade, so they are
+ * re-hashed on the next successful login.
+ */
+public class BoundedBCryptPasswordEncoder extends BCryptPasswordEncoder implements DisposableBean {
+
+	private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$");
+
+	private final int strength;
+
+	private final ThreadPoolExecutor executor;
+
+	private final Timer encodeTimer;
+	private final Timer matchesTimer;
+	private final Timer queueWaitTimer;
+	private final Counter rejectedCounter;
+
+	public BoundedBCryptPasswordEncoder(int strength, int threads, int queueCapacity, MeterRegistry meterRegistry) {
+		super(strength);
+		this.strength = strength;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), new BCryptThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+		this.encodeTimer = Timer.builder("security.password.hash").tag("operation", "encode").register(meterRegistry);
+		this.matchesTimer = Timer.builder("security.password.hash").tag("operation", "matches").register(meterRegistry);
+		this.queueWaitTimer = Timer.builder("security.password.queue.wait").register(meterRegistry);
+		this.rejectedCounter = Counter.builder("security.password.rejected").register(meterRegistry);
+		Gauge.builder("security.password.queue.depth", executor, e -> e.getQueue().size()).register(meterRegistry);
+	}
+
+	@Override
+	public String encode(CharSequence rawPassword) {
+		return execute(encodeTimer, () -> super.encode(rawPassword));
+	}
+
+	@Override
+	public boolean matches(CharSequence rawPassword, String encodedPassword) {
+		return execute(matchesTimer, () -> super.matches(rawPassword, encodedPassword));
+	}
+
+	@Override
+	public boolean upgradeEncoding(String encodedPassword) {
+		if (encodedPassword == null) {
+			return false;
+		}
+		Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+		return matcher.find() && Integer.parseInt(matcher.group(1)) < strength;
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdown();
+	}
+
+	private <T> T execute(Timer timer, Callable<T> task) {
+		long queuedAt = System.nanoTime();
+		Future<T> future;
+		try {
+			future = executor.submit(() -> {
+				queueWaitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+				return timer.recordCallable(task);
+			});
+		} catch (RejectedExecutionException e) {
+			rejectedCounter.increment();
+			throw new APIServiceUnavailableException("Too many concurrent logins, retry later.", e);
+		}
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static class BCryptThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "bcrypt-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -1,7 +1,5 @@
 package com.example.demo.security;
 
-import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
-
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
@@ -11,6 +9,9 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -18,7 +19,10 @@ import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import com.auth0.jwt.JWT;
-import com.example.demo.model.persistence.User;
+import com.example.demo.exceptions.APIBadRequestException;
+import com.example.demo.exceptions.APIErrorResponseImpl;
+import com.example.demo.exceptions.APIRuntimeException;
+import com.example.demo.model.requests.LoginRequest;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
@@ -29,9 +33,15 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilter {
 
 	private AuthenticationManager authenticationManager;
+
+	private ObjectMapper objectMapper;
+
+	private LoginRequestReader loginRequestReader;
 	
-	public JWTAuthenticationFilter(AuthenticationManager authenticationManager) {
+	public JWTAuthenticationFilter(AuthenticationManager authenticationManager, ObjectMapper objectMapper) {
 		this.authenticationManager = authenticationManager;
+		this.objectMapper = objectMapper;
+		this.loginRequestReader = new LoginRequestReader(objectMapper);
 	}
 	
 	/**
@@ -42,17 +52,38 @@ public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilte
             HttpServletResponse res) throws AuthenticationException {
 
 		try {
-			User credentials = new ObjectMapper().readValue(req.getInputStream(), User.class);
+			if (req.getContentLengthLong() > LoginRequestReader.MAX_BODY_SIZE) {
+				throw new APIBadRequestException("Login request is larger than " + LoginRequestReader.MAX_BODY_SIZE + " bytes.");
+			}
+			LoginRequest credentials = loginRequestReader.read(req.getInputStream());
 			
 			return authenticationManager.authenticate(
 				new UsernamePasswordAuthenticationToken(credentials.getUsername(),
 						credentials.getPassword(), new ArrayList<>())
 			);
 					
+		} catch (APIRuntimeException e) {
+			// bad request, or password hashing pool saturated: answer without authenticating
+			writeError(res, e);
+			return null;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
+
+	private void writeError(HttpServletResponse res, APIRuntimeException e) {
+		try {
+			res.setStatus(e.getStatus().value());
+			if (e.getStatus() == HttpStatus.SERVICE_UNAVAILABLE) {
+				res.setHeader(HttpHeaders.RETRY_AFTER, "1");
+			}
+			res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			objectMapper.writeValue(res.getOutputStream(),
+					new APIErrorResponseImpl(e.getMessage(), e.getStatus().value(), System.currentTimeMillis()));
+		} catch (IOException ioe) {
+			throw new RuntimeException(ioe);
+		}
+	}
 	
 	/**
 	 * Override method when user successful authenticate.
@@ -65,7 +96,7 @@ public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilte
 		String token = JWT.create()
 				.withSubject(((org.springframework.security.core.userdetails.User) auth.getPrincipal()).getUsername())
 				.withExpiresAt(new Date(System.currentTimeMillis() + SecurityConstants.EXPIRATION_TIME))
-				.sign(HMAC512(SecurityConstants.SECRET.getBytes()));
+				.sign(SecurityConstants.ALGORITHM);
 		
 		res.addHeader(SecurityConstants.HEADER_STRING, SecurityConstants.TOKEN_PREFIX + token);
 		
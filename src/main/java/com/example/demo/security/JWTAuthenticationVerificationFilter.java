@@ -13,13 +13,18 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
-
 public class JWTAuthenticationVerificationFilter extends BasicAuthenticationFilter {
 
+	private final JWTTokenVerifier tokenVerifier;
+
 	public JWTAuthenticationVerificationFilter(AuthenticationManager authenticationManager) {
+		this(authenticationManager, new JWTTokenVerifier(SecurityConstants.ALGORITHM,
+				SecurityConstants.VERIFIED_TOKEN_CACHE_SIZE, SecurityConstants.VERIFIED_TOKEN_CACHE_TTL));
+	}
+
+	public JWTAuthenticationVerificationFilter(AuthenticationManager authenticationManager, JWTTokenVerifier tokenVerifier) {
 		super(authenticationManager);
+		this.tokenVerifier = tokenVerifier;
 	}
 
 	/**
@@ -31,9 +36,7 @@ public class JWTAuthenticationVerificationFilter extends BasicAuthenticationFilt
 		
 		String token = req.getHeader(SecurityConstants.HEADER_STRING);
 		if (token != null) {
-			String user = JWT.require(Algorithm.HMAC512(SecurityConstants.SECRET.getBytes())).build()
-					.verify(token.replace(SecurityConstants.TOKEN_PREFIX, ""))
-					.getSubject();
+			String user = tokenVerifier.verify(token.replace(SecurityConstants.TOKEN_PREFIX, ""));
 			if (user != null) {
 				return new UsernamePasswordAuthenticationToken(user, null, new ArrayList<>());
 			}
@@ -0,0 +1,125 @@
+package com.example.demo.security;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+/**
+ * Verify tokens with one long-lived verifier and remember the subject of tokens already verified.
+ * A client replaying the same token is answered from the cache without the HMAC check and JSON decode.
+ * Entries are keyed by the SHA-256 digest of the token, so raw tokens are never kept in memory, and expire
+ * at the token's own expiry time, or after the cache ttl, whichever comes first. Both the cache and the token
+ * verification read the time from the given clock.
+ */
+public class JWTTokenVerifier {
+
+	private final JWTVerifier verifier;
+
+	private final Cache<ByteBuffer, VerifiedToken> verifiedTokens;
+
+	private final Clock clock;
+
+	public JWTTokenVerifier(Algorithm algorithm, long maximumSize, long ttlMillis) {
+		this(algorithm, maximumSize, ttlMillis, Clock.systemUTC());
+	}
+
+	public JWTTokenVerifier(Algorithm algorithm, long maximumSize, long ttlMillis, Clock clock) {
+		this.clock = clock;
+		this.verifier = ((JWTVerifier.BaseVerification) JWT.require(algorithm)).build(() -> new Date(clock.millis()));
+		this.verifiedTokens = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfter(new TokenExpiry(ttlMillis, clock))
+				.ticker(() -> TimeUnit.MILLISECONDS.toNanos(clock.millis()))
+				.build();
+	}
+
+	/**
+	 * Return the subject of the token.
+	 * @param token the token without the Bearer prefix
+	 * @return
+	 * @throws JWTVerificationException when the token is invalid or expired
+	 */
+	public String verify(String token) {
+		ByteBuffer key = digest(token);
+		VerifiedToken cached = verifiedTokens.getIfPresent(key);
+		if (cached != null && cached.expiresAt > clock.millis()) {
+			return cached.subject;
+		}
+		DecodedJWT jwt = verifier.verify(token);
+		if (jwt.getSubject() != null) {
+			Date expiresAt = jwt.getExpiresAt();
+			verifiedTokens.put(key, new VerifiedToken(jwt.getSubject(), expiresAt == null ? Long.MAX_VALUE : expiresAt.getTime()));
+		}
+		return jwt.getSubject();
+	}
+
+	/**
+	 * Number of tokens currently remembered.
+	 * @return
+	 */
+	public long size() {
+		verifiedTokens.cleanUp();
+		return verifiedTokens.estimatedSize();
+	}
+
+	private static ByteBuffer digest(String token) {
+		try {
+			return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static final class VerifiedToken {
+
+		private final String subject;
+		private final long expiresAt;
+
+		private VerifiedToken(String subject, long expiresAt) {
+			this.subject = subject;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private static final class TokenExpiry implements Expiry<ByteBuffer, VerifiedToken> {
+
+		private final long ttlMillis;
+
+		private final Clock clock;
+
+		private TokenExpiry(long ttlMillis, Clock clock) {
+			this.ttlMillis = ttlMillis;
+			this.clock = clock;
+		}
+
+		@Override
+		public long expireAfterCreate(ByteBuffer key, VerifiedToken value, long currentTime) {
+			long remaining = Math.min(value.expiresAt - clock.millis(), ttlMillis);
+			return TimeUnit.MILLISECONDS.toNanos(Math.max(remaining, 0));
+		}
+
+		@Override
+		public long expireAfterUpdate(ByteBuffer key, VerifiedToken value, long currentTime, long currentDuration) {
+			return expireAfterCreate(key, value, currentTime);
+		}
+
+		@Override
+		public long expireAfterRead(ByteBuffer key, VerifiedToken value, long currentTime, long currentDuration) {
+			return currentDuration;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.example.demo.security;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.example.demo.exceptions.APIBadRequestException;
+import com.example.demo.model.requests.LoginRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Parse login credentials with a reader derived once from the application's ObjectMapper, so the
+ * deserializer is looked up only once. Bodies larger than the limit are rejected without being parsed.
+ */
+public class LoginRequestReader {
+
+	public static final int MAX_BODY_SIZE = 4096;
+
+	private final ObjectReader reader;
+
+	public LoginRequestReader(ObjectMapper objectMapper) {
+		this.reader = objectMapper.readerFor(LoginRequest.class);
+	}
+
+	/**
+	 * Read the credentials from the request body.
+	 * @param in
+	 * @return
+	 * @throws IOException when the body cannot be read
+	 * @throws APIBadRequestException when the body is too large, not a valid login request or lacks the username
+	 * or the password
+	 */
+	public LoginRequest read(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+		byte[] buffer = new byte[512];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			body.write(buffer, 0, read);
+			if (body.size() > MAX_BODY_SIZE) {
+				throw new APIBadRequestException("Login request is larger than " + MAX_BODY_SIZE + " bytes.");
+			}
+		}
+		LoginRequest credentials;
+		try {
+			credentials = reader.readValue(body.toByteArray());
+		} catch (JsonProcessingException e) {
+			throw new APIBadRequestException("Malformed login request.", e);
+		}
+		if (credentials == null || credentials.getUsername() == null || credentials.getPassword() == null) {
+			throw new APIBadRequestException("Login request must have a username and a password.");
+		}
+		return credentials;
+	}
+}
@@ -1,5 +1,7 @@
 package com.example.demo.security;
 
+import com.auth0.jwt.algorithms.Algorithm;
+
 public class SecurityConstants {
 
 	public final static String SECRET = "supersecret";
@@ -7,4 +9,11 @@ public class SecurityConstants {
     public static final String HEADER_STRING = "Authorization";
     public static final String SIGN_UP_URL = "/api/user/create";
 	public final static long EXPIRATION_TIME = 864_000_000;	// 10 days
+	public final static long VERIFIED_TOKEN_CACHE_SIZE = 10_000;
+	public final static long VERIFIED_TOKEN_CACHE_TTL = 600_000;	// 10 minutes
+
+	/**
+	 * Signing algorithm shared by token creation and verification. Thread-safe, so built only once.
+	 */
+	public final static Algorithm ALGORITHM = Algorithm.HMAC512(SECRET.getBytes());
 }
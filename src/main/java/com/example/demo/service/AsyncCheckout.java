@@ -0,0 +1,388 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.exceptions.APINotFoundException;
+import com.example.demo.exceptions.APIRuntimeException;
+import com.example.demo.exceptions.APIServiceUnavailableException;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.responses.CheckoutStatus;
+import com.example.demo.model.responses.CheckoutStatus.State;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Asynchronous checkout, used with orders.checkout.mode=async. A submit only checks the user, takes the id of
+ * the order and queues the checkout; the client polls its status by that id. The queue holds at most
+ * orders.checkout.queue-capacity checkouts, a submit finding it full is answered with 503 so the client backs off.
+ * orders.checkout.workers threads take up to orders.checkout.batch-size queued checkouts at a time and order them
+ * in one transaction, one commit for the lot. When one of them fails the transaction is rolled back and each is
+ * run again in its own, so a failing cart never fails the others. With the write-behind cart store every
+ * checkout runs in its own transaction, after its cart is written.
+ * Statuses are kept in memory for orders.checkout.status-ttl-millis, at most orders.checkout.status-max-size of
+ * them, the least used evicted first; a checkout accepted before a restart and
+ * not run is lost with the queue, a graceful shutdown runs the queued ones first.
+ * An Idempotency-Key is given to the first checkout carrying it: repeated submits answer with its status.
+ * Published metrics: orders.checkout.queue (queued checkouts), orders.checkout.rejected (queue full),
+ * orders.checkout.latency from acceptance to completion tagged by outcome (completed or failed), and
+ * orders.checkout.transaction, the time of a checkout transaction whether of one checkout or a batch.
+ */
+@Service
+@ConditionalOnProperty(name = "orders.checkout.mode", havingValue = "async")
+public class AsyncCheckout {
+
+	private static final Logger log = LoggerFactory.getLogger(AsyncCheckout.class);
+
+	private static final long POLL_MILLIS = 100;
+
+	private final OrderService orderService;
+
+	private final UserDirectory userDirectory;
+
+	private final IdempotencyKeys idempotencyKeys;
+
+	/**
+	 * Present with cart.storage.mode=write-behind.
+	 */
+	private final WriteBehindCartStore cartStore;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final LongSupplier orderIds;
+
+	private final BlockingQueue<CheckoutCommand> queue;
+
+	private final int workerCount;
+
+	private final int batchSize;
+
+	/**
+	 * Status of the recent checkouts by order id.
+	 */
+	private final Cache<Long, TrackedCheckout> statuses;
+
+	private final Counter rejected;
+
+	private final Timer completedLatency;
+
+	private final Timer failedLatency;
+
+	private final Timer transactionTimer;
+
+	private volatile boolean running;
+
+	private ExecutorService workers;
+
+	@Autowired
+	public AsyncCheckout(OrderService orderService, UserDirectory userDirectory, IdempotencyKeys idempotencyKeys,
+			ObjectProvider<WriteBehindCartStore> cartStore, PlatformTransactionManager transactionManager,
+			EntityManagerFactory entityManagerFactory,
+			@Value("${orders.checkout.queue-capacity:1000}") int queueCapacity,
+			@Value("${orders.checkout.workers:4}") int workerCount,
+			@Value("${orders.checkout.batch-size:20}") int batchSize,
+			@Value("${orders.checkout.status-ttl-millis:3600000}") long statusTtlMillis,
+			@Value("${orders.checkout.status-max-size:100000}") long statusMaxSize,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		this(orderService, userDirectory, idempotencyKeys, cartStore.getIfAvailable(), transactionManager,
+				orderIds(entityManagerFactory), queueCapacity, workerCount, batchSize, statusTtlMillis,
+				statusMaxSize, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+	}
+
+	public AsyncCheckout(OrderService orderService, UserDirectory userDirectory, IdempotencyKeys idempotencyKeys,
+			WriteBehindCartStore cartStore, PlatformTransactionManager transactionManager, LongSupplier orderIds,
+			int queueCapacity, int workerCount, int batchSize, long statusTtlMillis, long statusMaxSize,
+			MeterRegistry meterRegistry) {
+		this.orderService = orderService;
+		this.userDirectory = userDirectory;
+		this.idempotencyKeys = idempotencyKeys;
+		this.cartStore = cartStore;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.orderIds = orderIds;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.workerCount = Math.max(1, workerCount);
+		this.batchSize = Math.max(1, batchSize);
+		this.statuses = Caffeine.newBuilder()
+				.maximumSize(statusMaxSize)
+				.expireAfterWrite(statusTtlMillis, TimeUnit.MILLISECONDS)
+				.build();
+		Gauge.builder("orders.checkout.queue", queue, BlockingQueue::size)
+				.description("Checkouts accepted and waiting for a worker")
+				.register(meterRegistry);
+		this.rejected = Counter.builder("orders.checkout.rejected")
+				.description("Checkouts refused because the queue was full")
+				.register(meterRegistry);
+		this.completedLatency = latency(meterRegistry, "completed");
+		this.failedLatency = latency(meterRegistry, "failed");
+		this.transactionTimer = Timer.builder("orders.checkout.transaction")
+				.description("Time spent in a checkout transaction, of one checkout or a batch")
+				.register(meterRegistry);
+	}
+
+	private static Timer latency(MeterRegistry meterRegistry, String outcome) {
+		return Timer.builder("orders.checkout.latency")
+				.description("Time from the acceptance of a checkout to its outcome")
+				.tag("outcome", outcome)
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Order ids from the generator of UserOrder, so an order written later keeps the id taken now.
+	 */
+	private static LongSupplier orderIds(EntityManagerFactory entityManagerFactory) {
+		SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+		IdentifierGenerator generator = sessionFactory.getMetamodel().entityPersister(UserOrder.class)
+				.getIdentifierGenerator();
+		return () -> {
+			// the pooled optimizer only reaches the database once per block of ids
+			StatelessSession session = sessionFactory.openStatelessSession();
+			try {
+				return ((Number) generator.generate((SharedSessionContractImplementor) session, null)).longValue();
+			} finally {
+				session.close();
+			}
+		};
+	}
+
+	@PostConstruct
+	public void start() {
+		running = true;
+		AtomicInteger threads = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+			Thread thread = new Thread(runnable, "checkout-worker-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i = 0; i < workerCount; i++) {
+			workers.execute(this::work);
+		}
+	}
+
+	/**
+	 * Stop the workers once their batch is done, then run the checkouts still queued.
+	 * @throws InterruptedException
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		running = false;
+		if (workers != null) {
+			workers.shutdown();
+			workers.awaitTermination(30, TimeUnit.SECONDS);
+		}
+		while (processQueued(0) > 0) {
+			// until the queue is empty
+		}
+	}
+
+	/**
+	 * Accept a checkout of the user's cart, or answer with the checkout the idempotency key was given to.
+	 * @param username
+	 * @param idempotencyKey null when the client sent none
+	 * @return the status of the checkout, with the id of its order
+	 */
+	public CheckoutStatus submit(String username, String idempotencyKey) {
+		if (userDirectory.find(username) == null) {
+			throw new APINotFoundException("User not found - username: " + username);
+		}
+		if (queue.remainingCapacity() == 0) {
+			throw rejected();
+		}
+		long orderId = orderIds.getAsLong();
+		if (idempotencyKey != null) {
+			Long first = idempotencyKeys.reserve(username, idempotencyKey, orderId);
+			if (first != null) {
+				CheckoutStatus status = status(username, first);
+				return status != null ? status : CheckoutStatus.of(first, State.COMPLETED);
+			}
+		}
+		CheckoutStatus queued = CheckoutStatus.of(orderId, State.QUEUED);
+		statuses.put(orderId, new TrackedCheckout(username, queued));
+		if (!queue.offer(new CheckoutCommand(username, idempotencyKey, orderId, System.nanoTime()))) {
+			statuses.invalidate(orderId);
+			if (idempotencyKey != null) {
+				idempotencyKeys.release(username, idempotencyKey, orderId);
+			}
+			throw rejected();
+		}
+		return queued;
+	}
+
+	private APIServiceUnavailableException rejected() {
+		rejected.increment();
+		return new APIServiceUnavailableException("Too many checkouts in progress, please retry.");
+	}
+
+	/**
+	 * The status of a checkout of the user accepted recently, null when there is none in memory.
+	 * @param username
+	 * @param orderId
+	 * @return
+	 */
+	public CheckoutStatus status(String username, long orderId) {
+		TrackedCheckout tracked = statuses.getIfPresent(orderId);
+		return tracked != null && tracked.username.equals(username) ? tracked.status : null;
+	}
+
+	private void work() {
+		while (running) {
+			try {
+				processQueued(POLL_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				log.warn("event=checkout_worker_failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Run the next batch of queued checkouts, waiting up to waitMillis for the first.
+	 * @return the number of checkouts run
+	 * @throws InterruptedException
+	 */
+	int processQueued(long waitMillis) throws InterruptedException {
+		CheckoutCommand first = queue.poll(waitMillis, TimeUnit.MILLISECONDS);
+		if (first == null) {
+			return 0;
+		}
+		List<CheckoutCommand> batch = new ArrayList<>(batchSize);
+		batch.add(first);
+		queue.drainTo(batch, batchSize - 1);
+		process(batch);
+		return batch.size();
+	}
+
+	private void process(List<CheckoutCommand> batch) {
+		for (CheckoutCommand command : batch) {
+			update(command, CheckoutStatus.of(command.orderId, State.PROCESSING));
+		}
+		if (batch.size() > 1 && cartStore == null) {
+			List<UserOrder> orders = null;
+			try {
+				orders = transactionTimer.record(() -> transactionTemplate.execute(status -> {
+					List<UserOrder> written = new ArrayList<>(batch.size());
+					for (CheckoutCommand command : batch) {
+						written.add(orderService.submit(command.username, command.idempotencyKey, command.orderId));
+					}
+					return written;
+				}));
+			} catch (RuntimeException e) {
+				// one of them failed and took the others with it, each runs again alone to tell which
+				log.debug("event=checkout_batch_failed size={}", batch.size(), e);
+			}
+			if (orders != null) {
+				for (int i = 0; i < batch.size(); i++) {
+					complete(batch.get(i), orders.get(i));
+				}
+				return;
+			}
+		}
+		for (CheckoutCommand command : batch) {
+			UserOrder order;
+			try {
+				order = transactionTimer.record(() -> checkout(command));
+			} catch (RuntimeException e) {
+				fail(command, e);
+				continue;
+			}
+			complete(command, order);
+		}
+	}
+
+	private UserOrder checkout(CheckoutCommand command) {
+		if (cartStore != null) {
+			return cartStore.submit(command.username,
+					() -> orderService.submit(command.username, command.idempotencyKey, command.orderId));
+		}
+		return orderService.submit(command.username, command.idempotencyKey, command.orderId);
+	}
+
+	private void complete(CheckoutCommand command, UserOrder order) {
+		// a key already written with an order answers with that order's id
+		update(command, CheckoutStatus.of(order.getId(), State.COMPLETED));
+		completedLatency.record(System.nanoTime() - command.acceptedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private void fail(CheckoutCommand command, RuntimeException e) {
+		CheckoutStatus failed;
+		if (e instanceof APIRuntimeException) {
+			failed = CheckoutStatus.failed(command.orderId, e.getMessage(), ((APIRuntimeException) e).getStatus().value());
+		} else {
+			log.warn("event=checkout_failed order_id={}", command.orderId, e);
+			failed = CheckoutStatus.failed(command.orderId, "Checkout failed.", HttpStatus.INTERNAL_SERVER_ERROR.value());
+		}
+		update(command, failed);
+		if (command.idempotencyKey != null) {
+			idempotencyKeys.release(command.username, command.idempotencyKey, command.orderId);
+		}
+		failedLatency.record(System.nanoTime() - command.acceptedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private void update(CheckoutCommand command, CheckoutStatus status) {
+		statuses.put(command.orderId, new TrackedCheckout(command.username, status));
+	}
+
+	private static final class CheckoutCommand {
+
+		private final String username;
+
+		private final String idempotencyKey;
+
+		private final long orderId;
+
+		private final long acceptedNanos;
+
+		private CheckoutCommand(String username, String idempotencyKey, long orderId, long acceptedNanos) {
+			this.username = username;
+			this.idempotencyKey = idempotencyKey;
+			this.orderId = orderId;
+			this.acceptedNanos = acceptedNanos;
+		}
+	}
+
+	private static final class TrackedCheckout {
+
+		private final String username;
+
+		private final CheckoutStatus status;
+
+		private TrackedCheckout(String username, CheckoutStatus status) {
+			this.username = username;
+			this.status = status;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package com.example.demo.service;
+
+import java.util.function.Supplier;
+
+/**
+ * How cart mutations of the same user are serialized, selected with cart.locking.mode:
+ * optimistic (default) lets them race and relies on the cart version and retries, striped queues them
+ * in process on a lock per user. Mutations of different carts always proceed in parallel.
+ */
+public interface CartLockManager {
+
+	/**
+	 * Run action, which changes the cart of the user in its own transaction, serialized with the other
+	 * changes of that cart.
+	 * @param username
+	 * @param action
+	 * @return the result of action
+	 */
+	<T> T withLock(String username, Supplier<T> action);
+}
@@ -0,0 +1,203 @@
+package com.example.demo.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.aspect.RetryOnConflict;
+import com.example.demo.exceptions.APIBadRequestException;
+import com.example.demo.exceptions.APINotFoundException;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartItem;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BulkModifyCartRequest;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.ModifyCartRequest;
+
+/**
+ * Cart mutations. Each operation runs in one transaction on the managed cart, so Hibernate dirty checking
+ * writes only what changed: an insert for a new line, an update for a changed quantity, a delete for a
+ * removed line and an update of the cart total.
+ * The cart is versioned, so of two concurrent changes of the same cart one fails and is retried on the
+ * other's result. Two concurrent first adds of the same item collide on the unique cart line instead,
+ * which is retried the same way.
+ * A single change reads with at most two queries whatever the size of the cart: one for user, cart, lines
+ * and their items, one for the item when it is not in the cart yet.
+ * Every change reserves the stock of the lines it changed, see {@link InventoryService}.
+ * This is the cart.storage.mode=database path; {@link WriteBehindCartStore} applies the same changes in memory.
+ */
+@Service
+public class CartService {
+
+	public static final int MAX_BULK_OPERATIONS = 200;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	/**
+	 * The user's cart with its lines and their items, read in one query.
+	 * @param username
+	 * @return
+	 */
+	@Transactional(readOnly = true)
+	public Cart findCart(String username) {
+		return findUserWithCart(username).getCart();
+	}
+
+	@RetryOnConflict({ConcurrencyFailureException.class, DataIntegrityViolationException.class})
+	@Transactional
+	public Cart addToCart(ModifyCartRequest request) {
+		checkQuantity(request);
+		User user = findUserWithCart(request.getUsername());
+		Item item = findItem(request.getItemId());
+		Cart cart = user.getCart();
+		cart.addItem(item, request.getQuantity());
+		reserve(request.getUsername(), cart, Collections.singleton(item.getId()));
+		return cart;
+	}
+
+	@RetryOnConflict({ConcurrencyFailureException.class, DataIntegrityViolationException.class})
+	@Transactional
+	public Cart removeFromCart(ModifyCartRequest request) {
+		checkQuantity(request);
+		User user = findUserWithCart(request.getUsername());
+		Item item = findItem(request.getItemId());
+		Cart cart = user.getCart();
+		cart.removeItem(item, request.getQuantity());
+		reserve(request.getUsername(), cart, Collections.singleton(item.getId()));
+		return cart;
+	}
+
+	/**
+	 * Apply the operations in order to the user's cart in one transaction: one query for user, cart and lines,
+	 * one for all the items, then a single flush of the changed lines and total.
+	 * @param request
+	 * @return the cart after the last operation
+	 */
+	@RetryOnConflict({ConcurrencyFailureException.class, DataIntegrityViolationException.class})
+	@Transactional
+	public Cart modifyCart(BulkModifyCartRequest request) {
+		Set<Long> itemIds = itemIds(request.getOperations());
+		User user = findUserWithCart(request.getUsername());
+		Map<Long, Item> items = itemRepository.findAllById(itemIds).stream()
+				.collect(Collectors.toMap(Item::getId, Function.identity()));
+		if (items.size() < itemIds.size()) {
+			itemIds.removeAll(items.keySet());
+			throw new APINotFoundException("Item not found - id: " + itemIds);
+		}
+		Cart cart = user.getCart();
+		apply(cart, request.getOperations(), items);
+		reserve(request.getUsername(), cart, itemIds);
+		return cart;
+	}
+
+	/**
+	 * Check the quantity of a single item change, as {@link #itemIds(List)} does for bulk operations.
+	 */
+	static void checkQuantity(ModifyCartRequest request) {
+		if (request.getQuantity() < 0) {
+			throw new APIBadRequestException("Quantity must be at least 0.");
+		}
+	}
+
+	/**
+	 * Check the operations of a bulk change and return the ids of the items they change.
+	 */
+	static Set<Long> itemIds(List<CartOperation> operations) {
+		if (operations == null || operations.isEmpty() || operations.size() > MAX_BULK_OPERATIONS) {
+			throw new APIBadRequestException("Between 1 and " + MAX_BULK_OPERATIONS + " operations are required.");
+		}
+		Set<Long> itemIds = new HashSet<>();
+		for (CartOperation operation : operations) {
+			if (operation.getType() == null || operation.getQuantity() < 0) {
+				throw new APIBadRequestException("Every operation needs a type and a quantity of at least 0.");
+			}
+			itemIds.add(operation.getItemId());
+		}
+		return itemIds;
+	}
+
+	/**
+	 * Apply the operations in order to the cart, items holding every item they change by id.
+	 */
+	static void apply(Cart cart, List<CartOperation> operations, Map<Long, Item> items) {
+		for (CartOperation operation : operations) {
+			Item item = items.get(operation.getItemId());
+			switch (operation.getType()) {
+			case ADD:
+				cart.addItem(item, operation.getQuantity());
+				break;
+			case REMOVE:
+				cart.removeItem(item, operation.getQuantity());
+				break;
+			case SET:
+				cart.setItemQuantity(item, operation.getQuantity());
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Quantities of the given items in the cart, 0 for those without a line.
+	 */
+	static Map<Long, Integer> lineQuantities(Cart cart, Collection<Long> itemIds) {
+		Map<Long, Integer> quantities = new HashMap<>();
+		for (Long itemId : itemIds) {
+			CartItem line = cart.getLine(itemId);
+			quantities.put(itemId, line == null ? 0 : line.getQuantity());
+		}
+		return quantities;
+	}
+
+	/**
+	 * Reserve the stock of the changed lines at their new quantities. Not enough stock fails the whole change.
+	 */
+	private void reserve(String username, Cart cart, Collection<Long> itemIds) {
+		inventoryService.reserve(username, lineQuantities(cart, itemIds));
+	}
+
+	/**
+	 * The user with cart, lines and items in one query, so the change and the response built from the cart
+	 * load nothing lazily.
+	 */
+	private User findUserWithCart(String username) {
+		User user = userRepository.findWithCartByUsername(username);
+		if(user == null) {
+			throw new APINotFoundException("User not found - username: " + username);
+		}
+		return user;
+	}
+
+	/**
+	 * The item, found in the persistence context without a query when it is already in the cart.
+	 */
+	private Item findItem(long itemId) {
+		Optional<Item> item = itemRepository.findById(itemId);
+		if(!item.isPresent()) {
+			throw new APINotFoundException("Item not found - id: " + itemId);
+		}
+		return item.get();
+	}
+}
@@ -0,0 +1,40 @@
+package com.example.demo.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Generation counter of the item catalog, advanced by every catalog write. Listing ETags are built from it
+ * so a conditional read can be answered without querying the catalog.
+ * The counter starts at the startup time so ETags handed out before a restart are not reused.
+ */
+@Component
+public class CatalogVersion {
+
+	private final AtomicLong generation;
+
+	private volatile long lastModified;
+
+	public CatalogVersion() {
+		long now = System.currentTimeMillis();
+		this.generation = new AtomicLong(now);
+		this.lastModified = now;
+	}
+
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Time of the last catalog write, or of the startup when there was none, in epoch milliseconds.
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public void advance() {
+		lastModified = System.currentTimeMillis();
+		generation.incrementAndGet();
+	}
+}
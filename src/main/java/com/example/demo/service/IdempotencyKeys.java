@@ -0,0 +1,282 @@
+package com.example.demo.service;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.exceptions.APIBadRequestException;
+import com.example.demo.exceptions.APINotFoundException;
+import com.example.demo.model.persistence.IdempotencyKey;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.IdempotencyKeyRepository;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Makes order submits carrying an Idempotency-Key safe to repeat: a key answers with the order it created for
+ * orders.idempotency.ttl-millis instead of checking out again.
+ * Keys of recent orders are kept in a bounded cache (orders.idempotency.maximum-size entries); the key is also
+ * written with its order, in the submit transaction, so a key is answered after a restart, after leaving the
+ * cache, and by any instance. Concurrent submits of the same key in this instance wait for the first one and
+ * share its outcome, order or error. Stored keys older than the ttl are deleted every
+ * orders.idempotency.purge-millis.
+ * Published metrics: orders.idempotent.submits tagged by outcome (executed, replayed or joined) and the cache.*
+ * metrics of the idempotencyKeys cache.
+ */
+@Service
+public class IdempotencyKeys {
+
+	private static final Logger log = LoggerFactory.getLogger(IdempotencyKeys.class);
+
+	public static final int MAX_KEY_LENGTH = 255;
+
+	private final IdempotencyKeyRepository idempotencyKeyRepository;
+
+	private final OrderRepository orderRepository;
+
+	private final long ttlMillis;
+
+	private final long purgeMillis;
+
+	/**
+	 * Order id by scoped key, for the orders already committed and, in asynchronous checkout, the ones accepted.
+	 */
+	private final Cache<String, Long> orderIds;
+
+	/**
+	 * Submits running, by scoped key.
+	 */
+	private final ConcurrentHashMap<String, CompletableFuture<Long>> running = new ConcurrentHashMap<>();
+
+	private final Counter executed;
+
+	private final Counter replayed;
+
+	private final Counter joined;
+
+	private ScheduledExecutorService purger;
+
+	@Autowired
+	public IdempotencyKeys(IdempotencyKeyRepository idempotencyKeyRepository, OrderRepository orderRepository,
+			@Value("${orders.idempotency.maximum-size:100000}") long maximumSize,
+			@Value("${orders.idempotency.ttl-millis:86400000}") long ttlMillis,
+			@Value("${orders.idempotency.purge-millis:3600000}") long purgeMillis,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		this(idempotencyKeyRepository, orderRepository, maximumSize, ttlMillis, purgeMillis,
+				meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+	}
+
+	public IdempotencyKeys(IdempotencyKeyRepository idempotencyKeyRepository, OrderRepository orderRepository,
+			long maximumSize, long ttlMillis, long purgeMillis, MeterRegistry meterRegistry) {
+		this.idempotencyKeyRepository = idempotencyKeyRepository;
+		this.orderRepository = orderRepository;
+		this.ttlMillis = ttlMillis;
+		this.purgeMillis = purgeMillis;
+		this.orderIds = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, orderIds, "idempotencyKeys");
+		this.executed = submits(meterRegistry, "executed");
+		this.replayed = submits(meterRegistry, "replayed");
+		this.joined = submits(meterRegistry, "joined");
+	}
+
+	private static Counter submits(MeterRegistry meterRegistry, String outcome) {
+		return Counter.builder("orders.idempotent.submits")
+				.description("Order submits carrying an Idempotency-Key, by outcome")
+				.tag("outcome", outcome)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Delete the expired keys in the background.
+	 */
+	@PostConstruct
+	public void start() {
+		purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "idempotency-key-purger");
+			thread.setDaemon(true);
+			return thread;
+		});
+		purger.scheduleWithFixedDelay(this::purge, purgeMillis, purgeMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if (purger != null) {
+			purger.shutdown();
+			purger.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Delete the stored keys that no longer answer with their order.
+	 * @return how many were deleted
+	 */
+	int purgeExpired() {
+		return idempotencyKeyRepository.deleteByCreatedBefore(new Date(System.currentTimeMillis() - ttlMillis));
+	}
+
+	private void purge() {
+		try {
+			int purged = purgeExpired();
+			log.info("event=idempotency_keys_purged count={}", purged);
+		} catch (RuntimeException e) {
+			log.warn("event=idempotency_key_purge_failed", e);
+		}
+	}
+
+	/**
+	 * The order created with the key, or the order submit creates when the key is new. submit must record the
+	 * key with {@link #record(IdempotencyKey, String, String, long)} and return once committed.
+	 * @param username
+	 * @param key
+	 * @param submit
+	 * @return
+	 */
+	public UserOrder submit(String username, String key, Supplier<UserOrder> submit) {
+		String scopedKey = scopedKey(username, key);
+		Long orderId = orderIds.getIfPresent(scopedKey);
+		if (orderId != null) {
+			replayed.increment();
+			return order(orderId);
+		}
+		CompletableFuture<Long> mine = new CompletableFuture<>();
+		CompletableFuture<Long> first = running.putIfAbsent(scopedKey, mine);
+		if (first != null) {
+			joined.increment();
+			return order(await(first));
+		}
+		try {
+			UserOrder order = submit.get();
+			orderIds.put(scopedKey, order.getId());
+			mine.complete(order.getId());
+			return order;
+		} catch (RuntimeException | Error e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			running.remove(scopedKey, mine);
+		}
+	}
+
+	/**
+	 * Give the key to an accepted asynchronous checkout, unless it was used before. The checkout writes the key
+	 * with its order, or calls {@link #release(String, String, long)} when it fails.
+	 * @param username
+	 * @param key
+	 * @param orderId the id taken for the order of the checkout
+	 * @return the id of the order the key already stands for, null when it is now orderId's
+	 */
+	public Long reserve(String username, String key, long orderId) {
+		Long first = orderIds.asMap().putIfAbsent(scopedKey(username, key), orderId);
+		if (first != null) {
+			replayed.increment();
+		}
+		return first;
+	}
+
+	/**
+	 * Free the key given to a checkout that failed, so it can be used again.
+	 */
+	public void release(String username, String key, long orderId) {
+		orderIds.asMap().remove(scopedKey(username, key), orderId);
+	}
+
+	/**
+	 * The stored key, expired or not, null when it was never used. Reads in the caller's transaction.
+	 * @param username
+	 * @param key
+	 * @return
+	 */
+	public IdempotencyKey find(String username, String key) {
+		return idempotencyKeyRepository.findById(scopedKey(username, key)).orElse(null);
+	}
+
+	/**
+	 * Whether the stored key no longer answers with its order.
+	 */
+	public boolean isExpired(IdempotencyKey stored) {
+		return stored.getCreated().getTime() < System.currentTimeMillis() - ttlMillis;
+	}
+
+	/**
+	 * Count a submit answered with the order the key created before.
+	 */
+	public void replayed() {
+		replayed.increment();
+	}
+
+	/**
+	 * Write the key with the order just created, in the caller's transaction, reusing the expired row of the key
+	 * when there is one.
+	 * @param expired the row {@link #find(String, String)} returned, or null
+	 * @param username
+	 * @param key
+	 * @param orderId
+	 */
+	public void record(IdempotencyKey expired, String username, String key, long orderId) {
+		IdempotencyKey stored = expired;
+		if (stored == null) {
+			stored = new IdempotencyKey(scopedKey(username, key), orderId, new Date());
+		} else {
+			stored.setOrderId(orderId);
+			stored.setCreated(new Date());
+		}
+		// written now, a concurrent submit of the key in another instance fails on it and is retried
+		idempotencyKeyRepository.saveAndFlush(stored);
+		executed.increment();
+	}
+
+	private UserOrder order(long orderId) {
+		return orderRepository.findWithItemsById(orderId)
+				.orElseThrow(() -> new APINotFoundException("Order not found - id: " + orderId));
+	}
+
+	private static long await(CompletableFuture<Long> first) {
+		try {
+			return first.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * The key prefixed with the username and its length, so no two users' keys can collide.
+	 */
+	static String scopedKey(String username, String key) {
+		if (key == null || key.trim().isEmpty() || key.length() > MAX_KEY_LENGTH) {
+			throw new APIBadRequestException("Idempotency-Key must have between 1 and " + MAX_KEY_LENGTH + " characters.");
+		}
+		return username.length() + ":" + username + ":" + key;
+	}
+}
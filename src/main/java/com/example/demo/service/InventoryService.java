@@ -0,0 +1,509 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.exceptions.APIBadRequestException;
+import com.example.demo.exceptions.APIConflictException;
+import com.example.demo.model.persistence.Stock;
+import com.example.demo.model.persistence.repositories.StockRepository;
+import com.example.demo.model.responses.StockLevel;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Stock of the items that have a stock row. Every user's cart holds a reservation of the units of its lines,
+ * which expires inventory.reservation-ttl-millis after the last change of the line; checkout holds the
+ * units until its transaction commits, then sells them.
+ * The counters live in memory: units are taken with a compare-and-set on the counts of the item, so
+ * any number of concurrent reservations of a hot item never wait on a lock, and never take more than is
+ * available. The counters are written to the stock table every inventory.flush-millis, and on shutdown.
+ * Reservations themselves are not persisted, so after a restart carts reserve again at checkout. The counters
+ * only guard this application instance.
+ * Published metrics: inventory.reservations tagged by result (granted or rejected),
+ * inventory.reservations.expired and inventory.flush.
+ */
+@Service
+public class InventoryService {
+
+	private static final Logger log = LoggerFactory.getLogger(InventoryService.class);
+
+	private final StockRepository stockRepository;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final long reservationTtlMillis;
+
+	private final long flushMillis;
+
+	/**
+	 * Live counters of the stock-tracked items, by item id.
+	 */
+	private final Map<Long, ItemStock> stocks = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<ReservationKey, Reservation> reservations = new ConcurrentHashMap<>();
+
+	/**
+	 * Items whose counters changed since they were last written.
+	 */
+	private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+	private final Counter granted;
+
+	private final Counter rejected;
+
+	private final Counter expired;
+
+	private final Timer flushTimer;
+
+	private ScheduledExecutorService writer;
+
+	@Autowired
+	public InventoryService(StockRepository stockRepository, PlatformTransactionManager transactionManager,
+			@Value("${inventory.reservation-ttl-millis:900000}") long reservationTtlMillis,
+			@Value("${inventory.flush-millis:1000}") long flushMillis,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		this(stockRepository, transactionManager, reservationTtlMillis, flushMillis, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+	}
+
+	public InventoryService(StockRepository stockRepository, PlatformTransactionManager transactionManager,
+			long reservationTtlMillis, long flushMillis, MeterRegistry meterRegistry) {
+		this.stockRepository = stockRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.reservationTtlMillis = reservationTtlMillis;
+		this.flushMillis = flushMillis;
+		this.granted = reservations(meterRegistry, "granted");
+		this.rejected = reservations(meterRegistry, "rejected");
+		this.expired = Counter.builder("inventory.reservations.expired")
+				.description("Cart reservations released because the cart did not change for too long")
+				.register(meterRegistry);
+		this.flushTimer = Timer.builder("inventory.flush")
+				.description("Time spent writing the stock counters to the database")
+				.register(meterRegistry);
+	}
+
+	private static Counter reservations(MeterRegistry meterRegistry, String result) {
+		return Counter.builder("inventory.reservations")
+				.description("Reservations of additional units, by result")
+				.tag("result", result)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Load the stock rows, then expire reservations and write the counters in the background.
+	 */
+	@PostConstruct
+	public void start() {
+		for (Stock stock : stockRepository.findAll()) {
+			stocks.put(stock.getItemId(), new ItemStock(stock.getOnHand()));
+		}
+		writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "inventory-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writer.scheduleWithFixedDelay(this::maintain, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the background writer and write what it has not written yet.
+	 * @throws InterruptedException
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if (writer != null) {
+			writer.shutdown();
+			writer.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		flush();
+	}
+
+	private void maintain() {
+		try {
+			expireReservations();
+			flush();
+		} catch (RuntimeException e) {
+			log.warn("event=inventory_flush_failed pending={}", dirty.size(), e);
+		}
+	}
+
+	/**
+	 * Current stock of the item.
+	 * @param itemId
+	 * @return
+	 */
+	public StockLevel level(long itemId) {
+		ItemStock stock = stocks.get(itemId);
+		if (stock == null) {
+			return new StockLevel(itemId, false, 0, 0, 0);
+		}
+		Counts counts = stock.counts();
+		return new StockLevel(itemId, true, counts.onHand, counts.reserved, counts.available());
+	}
+
+	/**
+	 * Set the units of the item on hand, starting to track its stock if it was not. Units already reserved
+	 * stay reserved, so less than them on hand leaves nothing available until carts release some.
+	 * @param itemId
+	 * @param onHand
+	 * @return
+	 */
+	public StockLevel setOnHand(long itemId, long onHand) {
+		if (onHand < 0) {
+			throw new APIBadRequestException("Units on hand must be at least 0.");
+		}
+		stocks.computeIfAbsent(itemId, id -> new ItemStock(0)).setOnHand(onHand);
+		dirty.add(itemId);
+		flush();
+		return level(itemId);
+	}
+
+	/**
+	 * Reserve for the user's cart the given number of units of each item, the quantities of its lines after a
+	 * change. Additional units are taken right away; units no longer needed are released once the change
+	 * commits, and the units taken are given back if it rolls back. Items without stock are ignored.
+	 * @param username
+	 * @param quantities units by item id
+	 * @throws APIConflictException when an item has not enough units available, nothing is reserved then
+	 */
+	public void reserve(String username, Map<Long, Integer> quantities) {
+		adjust(username, quantities, System.currentTimeMillis() + reservationTtlMillis);
+	}
+
+	/**
+	 * Reserve the cart lines being checked out until {@link #commitCheckout(String, Map)} sells them: like
+	 * {@link #reserve(String, Map)}, without expiry.
+	 * @param username
+	 * @param quantities units by item id
+	 * @return the units held, of the items with stock: what commitCheckout is to sell
+	 */
+	public Map<Long, Integer> holdForCheckout(String username, Map<Long, Integer> quantities) {
+		return adjust(username, quantities, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Sell the units held for the checkout once its transaction commits, or right away outside of one.
+	 * @param username
+	 * @param quantities units by item id, as returned by {@link #holdForCheckout(String, Map)}
+	 */
+	public void commitCheckout(String username, Map<Long, Integer> quantities) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					sell(username, quantities);
+				}
+			});
+		} else {
+			sell(username, quantities);
+		}
+	}
+
+	private Map<Long, Integer> adjust(String username, Map<Long, Integer> quantities, long expiresAt) {
+		boolean deferred = TransactionSynchronizationManager.isSynchronizationActive();
+		Map<ReservationKey, Change> changes = new HashMap<>();
+		Map<ReservationKey, Integer> releases = new HashMap<>();
+		Map<Long, Integer> tracked = new HashMap<>();
+		try {
+			for (Map.Entry<Long, Integer> quantity : quantities.entrySet()) {
+				ItemStock stock = stocks.get(quantity.getKey());
+				if (stock == null) {
+					continue;
+				}
+				ReservationKey key = new ReservationKey(username, quantity.getKey());
+				int target = quantity.getValue();
+				reservations.compute(key, (k, current) -> {
+					int held = current == null ? 0 : current.quantity;
+					int taken = Math.max(0, target - held);
+					if (taken > 0) {
+						if (!stock.tryTake(taken)) {
+							rejected.increment();
+							throw new APIConflictException("Not enough stock left - item id: " + k.itemId);
+						}
+						granted.increment();
+						dirty.add(k.itemId);
+					}
+					Reservation written;
+					if (target < held) {
+						// released once nothing else of the change can fail
+						releases.put(k, target);
+						written = new Reservation(held, expiresAt);
+					} else {
+						written = target == 0 ? null : new Reservation(target, expiresAt);
+					}
+					changes.put(k, new Change(current, written, taken));
+					return written;
+				});
+				tracked.put(quantity.getKey(), target);
+			}
+		} catch (RuntimeException e) {
+			changes.forEach(this::undo);
+			throw e;
+		}
+		if (!deferred) {
+			releases.forEach(this::release);
+		} else if (!changes.isEmpty()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status == TransactionSynchronization.STATUS_COMMITTED) {
+						releases.forEach(InventoryService.this::release);
+					} else {
+						changes.forEach(InventoryService.this::undo);
+					}
+				}
+			});
+		}
+		return tracked;
+	}
+
+	/**
+	 * Give back the units a change that did not happen took, and only those: changes committed meanwhile may
+	 * have sold or released the rest of the reservation, or the whole of it.
+	 */
+	private void undo(ReservationKey key, Change change) {
+		reservations.computeIfPresent(key, (k, current) -> {
+			int givenBack = Math.min(change.taken, current.quantity);
+			if (givenBack > 0) {
+				stocks.get(k.itemId).giveBack(givenBack);
+				dirty.add(k.itemId);
+			}
+			int quantity = current.quantity - givenBack;
+			// the expiry the change set is undone too, unless another change replaced the reservation since
+			long expiresAt = current == change.written && change.previous != null
+					? change.previous.expiresAt : current.expiresAt;
+			return quantity == 0 ? null : new Reservation(quantity, expiresAt);
+		});
+	}
+
+	private void release(ReservationKey key, int quantity) {
+		reservations.computeIfPresent(key, (k, current) -> {
+			if (current.quantity <= quantity) {
+				return current;
+			}
+			stocks.get(k.itemId).giveBack(current.quantity - quantity);
+			dirty.add(k.itemId);
+			return quantity == 0 ? null : new Reservation(quantity, current.expiresAt);
+		});
+	}
+
+	private void sell(String username, Map<Long, Integer> quantities) {
+		for (Map.Entry<Long, Integer> quantity : quantities.entrySet()) {
+			ItemStock stock = stocks.get(quantity.getKey());
+			if (stock == null) {
+				continue;
+			}
+			int units = quantity.getValue();
+			reservations.compute(new ReservationKey(username, quantity.getKey()), (k, current) -> {
+				int held = current == null ? 0 : current.quantity;
+				if (held < units) {
+					throw new IllegalStateException("Checkout of " + units + " units of item " + k.itemId
+							+ " holds only " + held);
+				}
+				if (held > units) {
+					stock.giveBack(held - units);
+				}
+				stock.sell(units);
+				return null;
+			});
+			dirty.add(quantity.getKey());
+		}
+	}
+
+	/**
+	 * Release the reservations whose cart did not change for longer than the reservation ttl.
+	 */
+	void expireReservations() {
+		long now = System.currentTimeMillis();
+		for (ReservationKey key : reservations.keySet()) {
+			reservations.computeIfPresent(key, (k, reservation) -> {
+				if (reservation.expiresAt > now) {
+					return reservation;
+				}
+				stocks.get(k.itemId).giveBack(reservation.quantity);
+				dirty.add(k.itemId);
+				expired.increment();
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * Write the counters changed since the last write: one query for their rows, one batch of updates.
+	 */
+	public synchronized void flush() {
+		if (dirty.isEmpty()) {
+			return;
+		}
+		List<Long> itemIds = new ArrayList<>(dirty);
+		dirty.removeAll(itemIds);
+		try {
+			flushTimer.record(() -> transactionTemplate.execute(status -> {
+				Map<Long, Stock> rows = stockRepository.findAllById(itemIds).stream()
+						.collect(Collectors.toMap(Stock::getItemId, Function.identity()));
+				for (Long itemId : itemIds) {
+					Counts counts = stocks.get(itemId).counts();
+					Stock row = rows.get(itemId);
+					if (row == null) {
+						stockRepository.save(new Stock(itemId, counts.onHand, counts.reserved));
+					} else {
+						row.setOnHand(counts.onHand);
+						row.setReserved(counts.reserved);
+					}
+				}
+				return null;
+			}));
+		} catch (RuntimeException e) {
+			dirty.addAll(itemIds);
+			throw e;
+		}
+	}
+
+	/**
+	 * Lock-free counters of one item: both counts are swapped together with a compare-and-set, so a reader
+	 * never sees units taken from one and not yet added to the other. A reservation never takes more than is
+	 * available.
+	 */
+	static final class ItemStock {
+
+		private final AtomicReference<Counts> counts;
+
+		ItemStock(long onHand) {
+			this.counts = new AtomicReference<>(new Counts(onHand, 0));
+		}
+
+		Counts counts() {
+			return counts.get();
+		}
+
+		boolean tryTake(long units) {
+			while (true) {
+				Counts current = counts.get();
+				if (current.available() < units) {
+					return false;
+				}
+				if (counts.compareAndSet(current, new Counts(current.onHand, current.reserved + units))) {
+					return true;
+				}
+			}
+		}
+
+		void giveBack(long units) {
+			update(-units, 0);
+		}
+
+		void sell(long units) {
+			update(-units, -units);
+		}
+
+		void setOnHand(long units) {
+			while (true) {
+				Counts current = counts.get();
+				if (counts.compareAndSet(current, new Counts(units, current.reserved))) {
+					return;
+				}
+			}
+		}
+
+		private void update(long reservedDelta, long onHandDelta) {
+			while (true) {
+				Counts current = counts.get();
+				Counts next = new Counts(current.onHand + onHandDelta, current.reserved + reservedDelta);
+				if (counts.compareAndSet(current, next)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Units of an item on hand and reserved at one instant; available is derived from them.
+	 */
+	static final class Counts {
+
+		final long onHand;
+
+		final long reserved;
+
+		Counts(long onHand, long reserved) {
+			this.onHand = onHand;
+			this.reserved = reserved;
+		}
+
+		long available() {
+			return onHand - reserved;
+		}
+	}
+
+	@EqualsAndHashCode
+	private static final class ReservationKey {
+
+		private final String username;
+
+		private final long itemId;
+
+		private ReservationKey(String username, long itemId) {
+			this.username = username;
+			this.itemId = itemId;
+		}
+	}
+
+	/**
+	 * What a change did to one reservation: the reservation before and after it, and the units it took.
+	 */
+	private static final class Change {
+
+		private final Reservation previous;
+
+		private final Reservation written;
+
+		private final int taken;
+
+		private Change(Reservation previous, Reservation written, int taken) {
+			this.previous = previous;
+			this.written = written;
+			this.taken = taken;
+		}
+	}
+
+	private static final class Reservation {
+
+		private final int quantity;
+
+		private final long expiresAt;
+
+		private Reservation(int quantity, long expiresAt) {
+			this.quantity = quantity;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.persistence.Item;
+
+/**
+ * In-memory inverted index over the tokens of item names and descriptions.
+ * Queries are case-insensitive, every query term matches as a prefix of a token and all terms must match.
+ * Results are ranked by the sum of the best match of each term: a name token weighs more than a description
+ * token and a whole-token match more than a prefix match. Ties are ordered by item id.
+ * The index is kept up to date by {@link ItemService} on every catalog write.
+ */
+@Component
+public class ItemSearchIndex {
+
+	private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final int NAME_WEIGHT = 3;
+	private static final int DESCRIPTION_WEIGHT = 1;
+	private static final int EXACT_MATCH_FACTOR = 2;
+
+	/**
+	 * Best result first: highest score, then lowest id.
+	 */
+	private static final Comparator<Map.Entry<Long, Integer>> RANKING = (a, b) -> {
+		int byScore = Integer.compare(b.getValue(), a.getValue());
+		return byScore != 0 ? byScore : Long.compare(a.getKey(), b.getKey());
+	};
+
+	/**
+	 * Token to the weight of the token for each item containing it, sorted so a prefix is a range of keys.
+	 */
+	private final NavigableMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+
+	private final Map<Long, Item> items = new HashMap<>();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Add the item, or replace the indexed version of it.
+	 * @param item
+	 */
+	public void index(Item item) {
+		lock.writeLock().lock();
+		try {
+			removeItem(item.getId());
+			addItem(item);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(Long id) {
+		lock.writeLock().lock();
+		try {
+			removeItem(id);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replace the whole index content.
+	 * @param catalog
+	 */
+	public void rebuild(Collection<Item> catalog) {
+		lock.writeLock().lock();
+		try {
+			postings.clear();
+			items.clear();
+			catalog.forEach(this::addItem);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return items.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the items matching every term of the query, best match first.
+	 * @param query
+	 * @param pageable
+	 * @return
+	 */
+	public Page<Item> search(String query, Pageable pageable) {
+		Set<String> terms = new LinkedHashSet<>(tokenize(query));
+		if (terms.isEmpty()) {
+			return new PageImpl<>(Collections.emptyList(), pageable, 0);
+		}
+		lock.readLock().lock();
+		try {
+			Map<Long, Integer> scores = null;
+			for (String term : terms) {
+				scores = matchTerm(term, scores);
+				if (scores.isEmpty()) {
+					break;
+				}
+			}
+			return new PageImpl<>(topResults(scores, pageable), pageable, scores.size());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Score every item having a token starting with term. When previous is given, only the items in it are kept
+	 * and their previous score is added.
+	 */
+	private Map<Long, Integer> matchTerm(String term, Map<Long, Integer> previous) {
+		Map<Long, Integer> matches = new HashMap<>();
+		for (Map.Entry<String, Map<Long, Integer>> token : postings.subMap(term, true, term + Character.MAX_VALUE, false).entrySet()) {
+			int factor = token.getKey().equals(term) ? EXACT_MATCH_FACTOR : 1;
+			for (Map.Entry<Long, Integer> posting : token.getValue().entrySet()) {
+				if (previous == null || previous.containsKey(posting.getKey())) {
+					matches.merge(posting.getKey(), posting.getValue() * factor, Math::max);
+				}
+			}
+		}
+		if (previous != null) {
+			matches.replaceAll((id, score) -> score + previous.get(id));
+		}
+		return matches;
+	}
+
+	/**
+	 * Select the requested page of results with a bounded heap instead of sorting every match.
+	 */
+	private List<Item> topResults(Map<Long, Integer> scores, Pageable pageable) {
+		long end = pageable.getOffset() + pageable.getPageSize();
+		if (pageable.getOffset() >= scores.size()) {
+			return Collections.emptyList();
+		}
+		int limit = (int) Math.min(end, scores.size());
+		PriorityQueue<Map.Entry<Long, Integer>> top = new PriorityQueue<>(limit + 1, RANKING.reversed());
+		for (Map.Entry<Long, Integer> score : scores.entrySet()) {
+			top.add(score);
+			if (top.size() > limit) {
+				top.poll();
+			}
+		}
+		List<Item> ranked = new ArrayList<>(top.size());
+		while (!top.isEmpty()) {
+			ranked.add(items.get(top.poll().getKey()));
+		}
+		Collections.reverse(ranked);
+		return ranked.subList((int) pageable.getOffset(), ranked.size());
+	}
+
+	private void addItem(Item item) {
+		items.put(item.getId(), item);
+		termWeights(item).forEach((term, weight) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(item.getId(), weight));
+	}
+
+	private void removeItem(Long id) {
+		Item indexed = items.remove(id);
+		if (indexed == null) {
+			return;
+		}
+		for (String term : termWeights(indexed).keySet()) {
+			Map<Long, Integer> itemWeights = postings.get(term);
+			if (itemWeights != null) {
+				itemWeights.remove(id);
+				if (itemWeights.isEmpty()) {
+					postings.remove(term);
+				}
+			}
+		}
+	}
+
+	private static Map<String, Integer> termWeights(Item item) {
+		Map<String, Integer> weights = new HashMap<>();
+		new LinkedHashSet<>(tokenize(item.getName())).forEach(term -> weights.merge(term, NAME_WEIGHT, Integer::sum));
+		new LinkedHashSet<>(tokenize(item.getDescription())).forEach(term -> weights.merge(term, DESCRIPTION_WEIGHT, Integer::sum));
+		return weights;
+	}
+
+	static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<>();
+		if (text == null) {
+			return tokens;
+		}
+		for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+			if (!token.isEmpty()) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+}
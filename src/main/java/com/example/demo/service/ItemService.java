@@ -0,0 +1,190 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.demo.aspect.RetryOnConflict;
+import com.example.demo.model.persistence.CartItem;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.responses.ItemSummary;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Read-through cache over the item catalog. Size and expiry of the caches are set by spring.cache.caffeine.spec,
+ * hit, miss and eviction counts are published as the cache.gets and cache.evictions metrics.
+ * Every catalog write must go through this service so the cached entries are invalidated, the search index
+ * is updated and the {@link CatalogVersion} is advanced. All three happen once the write commits: done before,
+ * a read between them and the commit would cache, index or tag the old item again.
+ */
+@Service
+public class ItemService {
+
+	public static final String ITEMS_CACHE = "items";
+	public static final String ITEMS_BY_NAME_CACHE = "itemsByName";
+	public static final String CATALOG_CACHE = "catalog";
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private ItemSearchIndex searchIndex;
+
+	@Autowired
+	private CatalogVersion catalogVersion;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	/**
+	 * Load the catalog into the search index once the application, and its initial data, is ready.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void buildSearchIndex() {
+		searchIndex.rebuild(itemRepository.findAll());
+	}
+
+	@Cacheable(CATALOG_CACHE)
+	public List<Item> findAll() {
+		return itemRepository.findAll();
+	}
+
+	public Page<Item> findAll(Pageable pageable) {
+		return itemRepository.findAll(pageable);
+	}
+
+	/**
+	 * Page of the catalog without descriptions, see {@link ItemSummary}.
+	 */
+	public Page<ItemSummary> findSummaries(Pageable pageable) {
+		return itemRepository.findSummaries(pageable);
+	}
+
+	/**
+	 * Write the whole catalog to out as newline delimited JSON, one item per line, ordered by id.
+	 * Rows are serialized as they are read from the cursor, so memory stays flat however large the catalog is,
+	 * and the output is flushed as the generator buffer fills rather than after every item.
+	 * @param out
+	 * @throws IOException
+	 */
+	@Transactional(readOnly = true)
+	public void writeCatalog(OutputStream out) throws IOException {
+		ObjectWriter writer = objectMapper.writerFor(Item.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		try (Stream<Item> items = itemRepository.streamCatalog();
+			 JsonGenerator json = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+			json.setRootValueSeparator(null);
+			Iterator<Item> iterator = items.iterator();
+			while (iterator.hasNext()) {
+				writer.writeValue(json, iterator.next());
+				json.writeRaw('\n');
+			}
+		}
+	}
+
+	@Cacheable(cacheNames = ITEMS_CACHE, unless = "#result == null")
+	public Optional<Item> findById(Long id) {
+		return itemRepository.findById(id);
+	}
+
+	@Cacheable(cacheNames = ITEMS_BY_NAME_CACHE, unless = "#result.isEmpty()")
+	public List<Item> findByName(String name) {
+		return itemRepository.findByName(name);
+	}
+
+	@RetryOnConflict
+	@Transactional
+	public Item save(Item item) {
+		Item saved = itemRepository.save(item);
+		repriceCartLines(saved);
+		afterCommit(() -> {
+			evict(saved.getId());
+			searchIndex.index(saved);
+			catalogVersion.advance();
+		});
+		return saved;
+	}
+
+	/**
+	 * Move the cart lines of the item to its current price. Only the lines with another price and their carts
+	 * are loaded and written, each cart total changing by the difference on those lines.
+	 */
+	private void repriceCartLines(Item item) {
+		for (CartItem line : cartRepository.findLinesToReprice(item.getId(), item.getPriceCents())) {
+			line.getCart().repriceLine(line, item.getPriceCents());
+		}
+	}
+
+	@Transactional
+	public void deleteById(Long id) {
+		itemRepository.deleteById(id);
+		afterCommit(() -> {
+			evict(id);
+			searchIndex.remove(id);
+			catalogVersion.advance();
+		});
+	}
+
+	/**
+	 * Run action once the current transaction commits, at once when there is none.
+	 */
+	private static void afterCommit(Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					action.run();
+				}
+			});
+		} else {
+			action.run();
+		}
+	}
+
+	private void evict(Long id) {
+		Cache items = cacheManager.getCache(ITEMS_CACHE);
+		if (items != null && id != null) {
+			items.evict(id);
+		}
+		for (String name : new String[] {ITEMS_BY_NAME_CACHE, CATALOG_CACHE}) {
+			Cache cache = cacheManager.getCache(name);
+			if (cache != null) {
+				cache.clear();
+			}
+		}
+	}
+
+	/**
+	 * Search item names and descriptions, see {@link ItemSearchIndex}.
+	 */
+	public Page<Item> search(String query, Pageable pageable) {
+		return searchIndex.search(query, pageable);
+	}
+}
@@ -0,0 +1,20 @@
+package com.example.demo.service;
+
+import java.util.function.Supplier;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * No in-process locking: concurrent changes of a cart are detected by its version and retried,
+ * see {@link com.example.demo.aspect.RetryOnConflict}. Works across several application instances.
+ */
+@Component
+@ConditionalOnProperty(name = "cart.locking.mode", havingValue = "optimistic", matchIfMissing = true)
+public class OptimisticCartLockManager implements CartLockManager {
+
+	@Override
+	public <T> T withLock(String username, Supplier<T> action) {
+		return action.get();
+	}
+}
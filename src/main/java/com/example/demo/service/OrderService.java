@@ -0,0 +1,184 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.aspect.RetryOnConflict;
+import com.example.demo.exceptions.APIBadRequestException;
+import com.example.demo.exceptions.APINotFoundException;
+import com.example.demo.model.events.OrderCreatedEvent;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartItem;
+import com.example.demo.model.persistence.IdempotencyKey;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.outbox.Outbox;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Checkout. A submit is one transaction with a fixed number of round trips whatever the cart size:
+ * one query for user, cart and lines, the order insert with its lines as one JDBC batch,
+ * the cart total reset and one delete for the cart lines.
+ * The cart total reset is checked against the cart version, so a submit racing with a cart change is
+ * retried on the changed cart instead of ordering a stale one.
+ * The stock of the lines is held before the order is written and sold once it commits; a line whose stock
+ * ran out since its reservation expired fails the submit with 409.
+ * A submit with an Idempotency-Key first looks the key up, and answers with the order the key created when it
+ * has not expired; otherwise the key is written with the new order, see {@link IdempotencyKeys}.
+ * The order.created event is written to the outbox with the order, see {@link Outbox}.
+ * An asynchronous checkout submits with the order id it answered with, see {@link AsyncCheckout}.
+ */
+@Service
+public class OrderService {
+
+	/**
+	 * Orders of a history serialized between two clears of the persistence context, the @BatchSize of the lines.
+	 */
+	private static final int HISTORY_BATCH_SIZE = 50;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private IdempotencyKeys idempotencyKeys;
+
+	@Autowired
+	private Outbox outbox;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@RetryOnConflict
+	@Transactional
+	public UserOrder submit(String username) {
+		return submit(username, null);
+	}
+
+	/**
+	 * Order the user's cart, or return the order created with the same idempotency key before.
+	 * @param username
+	 * @param idempotencyKey null when the client sent none
+	 * @return
+	 */
+	@RetryOnConflict({ConcurrencyFailureException.class, DataIntegrityViolationException.class})
+	@Transactional
+	public UserOrder submit(String username, String idempotencyKey) {
+		return submit(username, idempotencyKey, null);
+	}
+
+	/**
+	 * Order the user's cart as {@link #submit(String, String)} does, writing the order with the id given.
+	 * @param username
+	 * @param idempotencyKey null when the client sent none
+	 * @param orderId the id taken for the order when its checkout was accepted, null to take one now
+	 * @return
+	 */
+	@RetryOnConflict({ConcurrencyFailureException.class, DataIntegrityViolationException.class})
+	@Transactional
+	public UserOrder submit(String username, String idempotencyKey, Long orderId) {
+		IdempotencyKey recorded = null;
+		if (idempotencyKey != null) {
+			recorded = idempotencyKeys.find(username, idempotencyKey);
+			if (recorded != null && !idempotencyKeys.isExpired(recorded)) {
+				idempotencyKeys.replayed();
+				long replayedId = recorded.getOrderId();
+				return orderRepository.findWithItemsById(replayedId)
+						.orElseThrow(() -> new APINotFoundException("Order not found - id: " + replayedId));
+			}
+		}
+		User user = userRepository.findWithCartByUsername(username);
+		if(user == null) {
+			throw new APINotFoundException("User not found - username: " + username);
+		}
+		Cart cart = user.getCart();
+		if (cart.getItems().isEmpty()) {
+			throw new APIBadRequestException("Cart is empty.");
+		}
+		Map<Long, Integer> quantities = cart.getItems().stream()
+				.collect(Collectors.toMap(CartItem::getItemId, CartItem::getQuantity));
+		Map<Long, Integer> held = inventoryService.holdForCheckout(username, quantities);
+		UserOrder order = UserOrder.createFromCart(cart);
+		order.setUser(user);
+		cart.setTotalCents(0);
+		if (orderId == null) {
+			orderRepository.saveAndFlush(order);
+		} else {
+			// saved as new whatever its id, OrderIdGenerator keeps the id
+			order.setId(orderId);
+			entityManager.unwrap(Session.class).save(order);
+			entityManager.flush();
+		}
+		outbox.append(OrderCreatedEvent.TYPE, user.getId(), OrderCreatedEvent.of(order));
+		if (idempotencyKey != null) {
+			idempotencyKeys.record(recorded, username, idempotencyKey, order.getId());
+		}
+		cartRepository.deleteItemsByCartId(cart.getId());
+		inventoryService.commitCheckout(username, held);
+		// the lines are gone from the database, bring the detached cart in line for the response
+		cart.emptyCart();
+		return order;
+	}
+
+	/**
+	 * Write every order of the user to out as a JSON array, newest first. Orders are read from the cursor
+	 * HISTORY_BATCH_SIZE at a time: the lines of a batch are loaded with one query when the first of its orders
+	 * is serialized, then the persistence context is cleared, so memory stays flat however long the history is.
+	 * @param userId
+	 * @param out
+	 * @throws IOException
+	 */
+	@Transactional(readOnly = true)
+	public void writeHistory(long userId, OutputStream out) throws IOException {
+		try (Stream<UserOrder> orders = orderRepository.streamByUserId(userId);
+			 JsonGenerator json = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+			json.writeStartArray();
+			Iterator<UserOrder> iterator = orders.iterator();
+			List<UserOrder> batch = new ArrayList<>(HISTORY_BATCH_SIZE);
+			while (iterator.hasNext()) {
+				batch.add(iterator.next());
+				if (batch.size() == HISTORY_BATCH_SIZE || !iterator.hasNext()) {
+					for (UserOrder order : batch) {
+						objectMapper.writeValue(json, order);
+					}
+					batch.clear();
+					// only once per batch: detaching each order would leave its lines out of the batch fetch
+					entityManager.clear();
+				}
+			}
+			json.writeEndArray();
+		}
+	}
+}
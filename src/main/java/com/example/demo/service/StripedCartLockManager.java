@@ -0,0 +1,102 @@
+package com.example.demo.service;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.exceptions.APIServiceUnavailableException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Serializes the changes of a cart on a fixed table of locks, the user picking the lock by the hash of the
+ * username. Hot carts queue on their lock instead of failing and retrying their transaction; users sharing a
+ * stripe also wait on each other, which a few thousand stripes keeps rare. Only serializes within one
+ * application instance, the cart version still guards against the others.
+ * A change waiting longer than cart.locking.timeout-millis is answered with 503.
+ * Published metrics: cart.lock.wait (time to acquire the lock, with histogram) and cart.lock.timeouts.
+ */
+@Component
+@ConditionalOnProperty(name = "cart.locking.mode", havingValue = "striped")
+public class StripedCartLockManager implements CartLockManager {
+
+	private final ReentrantLock[] locks;
+
+	private final long timeoutMillis;
+
+	private final Timer waitTimer;
+
+	private final Counter timeouts;
+
+	@Autowired
+	public StripedCartLockManager(@Value("${cart.locking.stripes:1024}") int stripes,
+			@Value("${cart.locking.timeout-millis:2000}") long timeoutMillis,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		this(stripes, timeoutMillis, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+	}
+
+	public StripedCartLockManager(int stripes, long timeoutMillis, MeterRegistry meterRegistry) {
+		// a power of two, so the stripe is a mask of the hash
+		int size = Integer.highestOneBit(Math.max(1, Math.min(stripes, 1 << 16)) * 2 - 1);
+		this.locks = new ReentrantLock[size];
+		for (int i = 0; i < size; i++) {
+			locks[i] = new ReentrantLock();
+		}
+		this.timeoutMillis = timeoutMillis;
+		this.waitTimer = Timer.builder("cart.lock.wait")
+				.description("Time cart changes waited for their cart lock")
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+		this.timeouts = Counter.builder("cart.lock.timeouts")
+				.description("Cart changes rejected after waiting too long for their cart lock")
+				.register(meterRegistry);
+	}
+
+	@Override
+	public <T> T withLock(String username, Supplier<T> action) {
+		ReentrantLock lock = lockFor(username);
+		long start = System.nanoTime();
+		boolean acquired;
+		try {
+			acquired = lock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new APIServiceUnavailableException("Interrupted while waiting for the cart.", ex);
+		} finally {
+			waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+		if (!acquired) {
+			timeouts.increment();
+			throw new APIServiceUnavailableException("Too many concurrent changes of the cart, please retry.");
+		}
+		try {
+			return action.get();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int stripes() {
+		return locks.length;
+	}
+
+	/**
+	 * The lock of the user's stripe. A null username takes the first stripe, so the change runs and answers that
+	 * there is no such user.
+	 */
+	ReentrantLock lockFor(String username) {
+		int hash = Objects.hashCode(username);
+		// spread the high bits, as HashMap does
+		return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+	}
+}
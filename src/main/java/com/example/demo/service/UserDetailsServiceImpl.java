@@ -4,25 +4,49 @@ import java.util.Collections;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserCredentials;
 import com.example.demo.model.persistence.repositories.UserRepository;
 
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
 
 	@Autowired
 	private UserRepository userRepository;
 
+	@Autowired
+	private UserDirectory userDirectory;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username);
+        UserCredentials user = userDirectory.find(username);
         if (user == null) {
             throw new UsernameNotFoundException(username);
         }
         return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPassword(), Collections.emptyList());
     }
+
+    /**
+     * Store the password re-hashed at the current BCrypt cost, called after a successful login with an older hash.
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        UserCredentials credentials = userDirectory.find(userDetails.getUsername());
+        if (credentials == null) {
+            throw new UsernameNotFoundException(userDetails.getUsername());
+        }
+        // by primary key, the login already resolved the username
+        User user = userRepository.getOne(credentials.getId());
+        user.setPassword(newPassword);
+        userRepository.save(user);
+        userDirectory.invalidate(user.getUsername());
+        return new org.springframework.security.core.userdetails.User(user.getUsername(), newPassword, userDetails.getAuthorities());
+    }
 }
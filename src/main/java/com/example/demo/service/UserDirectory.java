@@ -0,0 +1,153 @@
+package com.example.demo.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import com.example.demo.model.persistence.UserCredentials;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Resolves usernames to user id and password hash. A username is read from the database once, then answered
+ * from a bounded process-wide cache (users.cache.maximum-size entries, each kept users.cache.ttl-millis), and
+ * within one HTTP request from a memo held in the request attributes, so the login path and the controllers
+ * share a single resolution.
+ * Unknown usernames are not cached. Callers changing a user must {@link #invalidate(String)} it.
+ * Published metrics: users.lookups tagged by source (memo, cache or database) and the cache.* metrics of the
+ * usernames cache.
+ */
+@Service
+public class UserDirectory {
+
+	private static final String MEMO_ATTRIBUTE = UserDirectory.class.getName() + ".memo";
+
+	private final UserRepository userRepository;
+
+	private final Cache<String, UserCredentials> cache;
+
+	private final Counter memoLookups;
+
+	private final Counter cacheLookups;
+
+	private final Counter databaseLookups;
+
+	@Autowired
+	public UserDirectory(UserRepository userRepository,
+			@Value("${users.cache.maximum-size:10000}") long maximumSize,
+			@Value("${users.cache.ttl-millis:600000}") long ttlMillis,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		this(userRepository, maximumSize, ttlMillis, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+	}
+
+	public UserDirectory(UserRepository userRepository, long maximumSize, long ttlMillis, MeterRegistry meterRegistry) {
+		this.userRepository = userRepository;
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "usernames");
+		this.memoLookups = lookups(meterRegistry, "memo");
+		this.cacheLookups = lookups(meterRegistry, "cache");
+		this.databaseLookups = lookups(meterRegistry, "database");
+	}
+
+	private static Counter lookups(MeterRegistry meterRegistry, String source) {
+		return Counter.builder("users.lookups")
+				.description("Username resolutions, by where the answer came from")
+				.tag("source", source)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Return id, username and password hash of the user, or null when there is no such user.
+	 * @param username
+	 * @return
+	 */
+	public UserCredentials find(String username) {
+		Map<String, UserCredentials> memo = memo();
+		UserCredentials credentials = memo == null ? null : memo.get(username);
+		if (credentials != null) {
+			memoLookups.increment();
+			return credentials;
+		}
+		credentials = cache.getIfPresent(username);
+		if (credentials != null) {
+			cacheLookups.increment();
+		} else {
+			databaseLookups.increment();
+			credentials = userRepository.findCredentialsByUsername(username);
+			if (credentials == null) {
+				return null;
+			}
+			cache.put(username, credentials);
+		}
+		if (memo != null) {
+			memo.put(username, credentials);
+		}
+		return credentials;
+	}
+
+	/**
+	 * Forget the user after it was created or changed. Inside a transaction it is forgotten again after commit,
+	 * so a lookup made before the commit does not keep the old values.
+	 * @param username
+	 */
+	public void invalidate(String username) {
+		Map<String, UserCredentials> memo = memo();
+		if (memo != null) {
+			memo.remove(username);
+		}
+		cache.invalidate(username);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					cache.invalidate(username);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Number of usernames currently cached.
+	 * @return
+	 */
+	public long size() {
+		cache.cleanUp();
+		return cache.estimatedSize();
+	}
+
+	/**
+	 * The memo of the current HTTP request, or null outside of one.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, UserCredentials> memo() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes == null) {
+			return null;
+		}
+		Map<String, UserCredentials> memo = (Map<String, UserCredentials>) attributes.getAttribute(MEMO_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+		if (memo == null) {
+			memo = new HashMap<>();
+			attributes.setAttribute(MEMO_ATTRIBUTE, memo, RequestAttributes.SCOPE_REQUEST);
+		}
+		return memo;
+	}
+}
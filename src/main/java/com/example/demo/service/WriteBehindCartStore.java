@@ -0,0 +1,576 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.exceptions.APINotFoundException;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartItem;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserCredentials;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BulkModifyCartRequest;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.ModifyCartRequest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Write-behind storage of the active carts, used with cart.storage.mode=write-behind. Carts read or changed
+ * recently are kept in memory by user id and every change is applied there; the database is brought up to
+ * date in batches of cart.write-behind.batch-size carts every cart.write-behind.flush-millis, when a cart is
+ * evicted, before its order is submitted and on shutdown. Any number of changes of a cart between two writes
+ * cost one write of its final state.
+ * Memory is bounded by cart.write-behind.max-lines, a cart counting for its lines plus one: past it the least
+ * recently used carts are written and evicted, as are the carts idle for cart.write-behind.idle-millis.
+ * A cart in memory is a copy replaced by every change, so readers never wait and never see it half changed.
+ * Changes of a cart are serialized on its entry. Memory being the truth, this mode suits a single application
+ * instance only, and the changes not written yet are lost if the process dies without shutting down.
+ * Lines in memory keep the unit price of their last change; the order is priced from the database.
+ * The version of a cart in memory is its database version in the high 32 bits and the number of changes since
+ * it was loaded in the low ones, and writing a changed cart always moves its database version on, so an ETag is
+ * never reused for other content.
+ * Published metrics: cart.store.carts and cart.store.lines (resident), cart.store.changes, cart.store.writes
+ * (carts written), cart.store.evictions tagged by cause (size, idle or submit) and cart.store.flush.
+ */
+@Component
+@ConditionalOnProperty(name = "cart.storage.mode", havingValue = "write-behind")
+public class WriteBehindCartStore {
+
+	private static final Logger log = LoggerFactory.getLogger(WriteBehindCartStore.class);
+
+	private final UserDirectory userDirectory;
+
+	private final UserRepository userRepository;
+
+	private final ItemService itemService;
+
+	private final InventoryService inventoryService;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final long maxLines;
+
+	private final long idleMillis;
+
+	private final long flushMillis;
+
+	private final int batchSize;
+
+	/**
+	 * Resident carts by user id, least recently used first. Guarded by itself, never held while waiting for an
+	 * entry.
+	 */
+	private final LinkedHashMap<Long, CartEntry> carts = new LinkedHashMap<>(256, 0.75f, true);
+
+	/**
+	 * Weight of the resident carts: their lines plus one per cart.
+	 */
+	private final AtomicLong lines = new AtomicLong();
+
+	/**
+	 * Carts changed since they were last written.
+	 */
+	private final Set<CartEntry> dirty = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Serializes the writes, so two writes of the same cart never race on its version.
+	 */
+	private final Object writeLock = new Object();
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	private final Counter changes;
+
+	private final Counter writes;
+
+	private final Counter sizeEvictions;
+
+	private final Counter idleEvictions;
+
+	private final Counter submitEvictions;
+
+	private final Timer flushTimer;
+
+	private ScheduledExecutorService writer;
+
+	@Autowired
+	public WriteBehindCartStore(UserDirectory userDirectory, UserRepository userRepository, ItemService itemService,
+			InventoryService inventoryService, PlatformTransactionManager transactionManager,
+			@Value("${cart.write-behind.max-lines:200000}") long maxLines,
+			@Value("${cart.write-behind.idle-millis:1800000}") long idleMillis,
+			@Value("${cart.write-behind.flush-millis:500}") long flushMillis,
+			@Value("${cart.write-behind.batch-size:100}") int batchSize,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		this(userDirectory, userRepository, itemService, inventoryService, transactionManager, maxLines, idleMillis,
+				flushMillis, batchSize, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+	}
+
+	public WriteBehindCartStore(UserDirectory userDirectory, UserRepository userRepository, ItemService itemService,
+			InventoryService inventoryService, PlatformTransactionManager transactionManager, long maxLines,
+			long idleMillis, long flushMillis, int batchSize, MeterRegistry meterRegistry) {
+		this.userDirectory = userDirectory;
+		this.userRepository = userRepository;
+		this.itemService = itemService;
+		this.inventoryService = inventoryService;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.maxLines = maxLines;
+		this.idleMillis = idleMillis;
+		this.flushMillis = flushMillis;
+		this.batchSize = Math.max(1, batchSize);
+		Gauge.builder("cart.store.carts", this, WriteBehindCartStore::size)
+				.description("Carts held in memory")
+				.register(meterRegistry);
+		Gauge.builder("cart.store.lines", lines, AtomicLong::get)
+				.description("Lines plus one per cart of the carts held in memory")
+				.register(meterRegistry);
+		this.changes = Counter.builder("cart.store.changes")
+				.description("Cart changes applied in memory")
+				.register(meterRegistry);
+		this.writes = Counter.builder("cart.store.writes")
+				.description("Changed carts written to the database")
+				.register(meterRegistry);
+		this.sizeEvictions = evictions(meterRegistry, "size");
+		this.idleEvictions = evictions(meterRegistry, "idle");
+		this.submitEvictions = evictions(meterRegistry, "submit");
+		this.flushTimer = Timer.builder("cart.store.flush")
+				.description("Time spent writing a batch of changed carts")
+				.register(meterRegistry);
+	}
+
+	private static Counter evictions(MeterRegistry meterRegistry, String cause) {
+		return Counter.builder("cart.store.evictions")
+				.description("Carts removed from memory, by cause")
+				.tag("cause", cause)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Write changed carts and evict idle ones in the background.
+	 */
+	@PostConstruct
+	public void start() {
+		writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "cart-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writer.scheduleWithFixedDelay(this::maintain, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the background writer and write every cart changed since its last write.
+	 * @throws InterruptedException
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if (writer != null) {
+			writer.shutdown();
+			writer.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		flush();
+	}
+
+	void maintain() {
+		try {
+			flush();
+			evictIdle();
+			evictOverBudget();
+		} catch (RuntimeException e) {
+			log.warn("event=cart_flush_failed pending={}", dirty.size(), e);
+		}
+	}
+
+	public Cart findCart(String username) {
+		while (true) {
+			CartEntry entry = entry(username);
+			Cart cart = entry.cart;
+			if (cart != null) {
+				return cart;
+			}
+			synchronized (entry) {
+				// evicted while waiting: a cart loaded into it would not be in the store
+				if (entry.evicted) {
+					continue;
+				}
+				cart = cart(entry, username);
+			}
+			evictOverBudget();
+			return cart;
+		}
+	}
+
+	public Cart addToCart(ModifyCartRequest request) {
+		CartService.checkQuantity(request);
+		Item item = item(request.getItemId());
+		return change(request.getUsername(), Collections.singleton(item.getId()),
+				cart -> cart.addItem(item, request.getQuantity()));
+	}
+
+	public Cart removeFromCart(ModifyCartRequest request) {
+		CartService.checkQuantity(request);
+		Item item = item(request.getItemId());
+		return change(request.getUsername(), Collections.singleton(item.getId()),
+				cart -> cart.removeItem(item, request.getQuantity()));
+	}
+
+	/**
+	 * Apply the operations in order to the user's cart, all or nothing.
+	 * @param request
+	 * @return the cart after the last operation
+	 */
+	public Cart modifyCart(BulkModifyCartRequest request) {
+		List<CartOperation> operations = request.getOperations();
+		Set<Long> itemIds = CartService.itemIds(operations);
+		Map<Long, Item> items = new HashMap<>();
+		List<Long> missing = new ArrayList<>();
+		for (Long itemId : itemIds) {
+			Item item = itemService.findById(itemId).orElse(null);
+			if (item == null) {
+				missing.add(itemId);
+			} else {
+				items.put(itemId, item);
+			}
+		}
+		if (!missing.isEmpty()) {
+			throw new APINotFoundException("Item not found - id: " + missing);
+		}
+		return change(request.getUsername(), itemIds, cart -> CartService.apply(cart, operations, items));
+	}
+
+	/**
+	 * Write the user's cart, then run the submit while holding the changes of the cart off. Once the order is
+	 * written the cart, emptied by it, is evicted, and loaded again on next use.
+	 * @param username
+	 * @param submit
+	 * @return what submit returned
+	 */
+	public <T> T submit(String username, Supplier<T> submit) {
+		while (true) {
+			CartEntry entry = entry(username);
+			synchronized (entry) {
+				if (entry.evicted) {
+					continue;
+				}
+				write(Collections.singletonList(entry));
+				T result = submit.get();
+				entry.evicted = true;
+				remove(entry);
+				submitEvictions.increment();
+				return result;
+			}
+		}
+	}
+
+	/**
+	 * Write every changed cart, batch-size carts per transaction. The carts of a failed batch stay changed and
+	 * are written again by the next flush.
+	 */
+	public void flush() {
+		// changes made meanwhile are left to the next flush, so a steady stream of them cannot keep this going
+		for (int pending = dirty.size(); pending > 0; pending -= batchSize) {
+			List<CartEntry> batch = new ArrayList<>(batchSize);
+			Iterator<CartEntry> iterator = dirty.iterator();
+			while (batch.size() < batchSize && iterator.hasNext()) {
+				batch.add(iterator.next());
+				iterator.remove();
+			}
+			if (batch.isEmpty()) {
+				return;
+			}
+			write(batch);
+		}
+	}
+
+	/**
+	 * Write and evict the carts not used for more than idle-millis.
+	 */
+	void evictIdle() {
+		long cutoff = System.currentTimeMillis() - idleMillis;
+		List<CartEntry> victims = new ArrayList<>();
+		synchronized (carts) {
+			for (CartEntry entry : carts.values()) {
+				// in access order, every following cart was used more recently
+				if (entry.lastAccess > cutoff) {
+					break;
+				}
+				victims.add(entry);
+			}
+		}
+		evictionLock.lock();
+		try {
+			evict(victims, idleEvictions);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Write and evict the least recently used carts until the resident lines fit max-lines again. A thread finding
+	 * another one evicting leaves it to that one.
+	 */
+	void evictOverBudget() {
+		if (lines.get() <= maxLines || !evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			List<CartEntry> victims = new ArrayList<>();
+			synchronized (carts) {
+				long excess = lines.get() - maxLines;
+				for (CartEntry entry : carts.values()) {
+					if (excess <= 0) {
+						break;
+					}
+					if (entry.cart != null) {
+						victims.add(entry);
+						excess -= entry.weight;
+					}
+				}
+			}
+			evict(victims, sizeEvictions);
+		} catch (RuntimeException e) {
+			// the change that went over the budget is done, the carts stay until the next attempt
+			log.warn("event=cart_eviction_failed lines={}", lines.get(), e);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	int size() {
+		synchronized (carts) {
+			return carts.size();
+		}
+	}
+
+	long lines() {
+		return lines.get();
+	}
+
+	private void evict(List<CartEntry> victims, Counter evictions) {
+		for (int from = 0; from < victims.size(); from += batchSize) {
+			write(victims.subList(from, Math.min(from + batchSize, victims.size())));
+		}
+		for (CartEntry entry : victims) {
+			// a cart changed since it was written stays, it was just used anyway
+			synchronized (entry) {
+				if (entry.evicted || entry.changed()) {
+					continue;
+				}
+				entry.evicted = true;
+			}
+			remove(entry);
+			evictions.increment();
+		}
+	}
+
+	/**
+	 * Apply the change to a copy of the user's cart, reserve the stock of the changed items and publish the copy.
+	 */
+	private Cart change(String username, Collection<Long> itemIds, Consumer<Cart> change) {
+		while (true) {
+			CartEntry entry = entry(username);
+			Cart changed;
+			synchronized (entry) {
+				if (entry.evicted) {
+					continue;
+				}
+				Cart current = cart(entry, username);
+				changed = current.copy();
+				change.accept(changed);
+				inventoryService.reserve(username, CartService.lineQuantities(changed, itemIds));
+				changed.setVersion(current.getVersion() + 1);
+				changed.setLastModified(new Date());
+				publish(entry, changed);
+				// after the cart, so whoever reads this count reads a cart holding these changes
+				entry.changes.incrementAndGet();
+			}
+			dirty.add(entry);
+			changes.increment();
+			evictOverBudget();
+			return changed;
+		}
+	}
+
+	/**
+	 * The resident entry of the user, a new empty one when there is none. It is in the map before its cart is
+	 * loaded, so a cart being written and evicted is never loaded from the database before it is written.
+	 */
+	private CartEntry entry(String username) {
+		UserCredentials user = userDirectory.find(username);
+		if (user == null) {
+			throw new APINotFoundException("User not found - username: " + username);
+		}
+		CartEntry entry;
+		synchronized (carts) {
+			entry = carts.get(user.getId());
+			if (entry == null || entry.evicted) {
+				if (entry != null) {
+					lines.addAndGet(-entry.weight);
+				}
+				entry = new CartEntry(user.getId());
+				carts.put(user.getId(), entry);
+			}
+		}
+		entry.lastAccess = System.currentTimeMillis();
+		return entry;
+	}
+
+	/**
+	 * The cart of the entry, loaded with its lines and items in one query on first use. Call holding the entry.
+	 */
+	private Cart cart(CartEntry entry, String username) {
+		if (entry.cart == null) {
+			User user = userRepository.findWithCartByUsername(username);
+			if (user == null) {
+				throw new APINotFoundException("User not found - username: " + username);
+			}
+			Cart cart = user.getCart().copy();
+			cart.setVersion(cart.getVersion() << 32);
+			publish(entry, cart);
+		}
+		return entry.cart;
+	}
+
+	private void publish(CartEntry entry, Cart cart) {
+		int weight = cart.getItems().size() + 1;
+		lines.addAndGet(weight - entry.weight);
+		entry.weight = weight;
+		entry.cart = cart;
+	}
+
+	private void remove(CartEntry entry) {
+		synchronized (carts) {
+			if (carts.get(entry.userId) == entry) {
+				carts.remove(entry.userId);
+				lines.addAndGet(-entry.weight);
+			}
+		}
+	}
+
+	/**
+	 * Write the changed carts among the entries in one transaction: one query for their users, carts and lines,
+	 * then the changed lines and carts as JDBC batches.
+	 */
+	private void write(List<CartEntry> entries) {
+		synchronized (writeLock) {
+			Map<Long, Cart> snapshots = new HashMap<>();
+			Map<CartEntry, Long> written = new HashMap<>();
+			for (CartEntry entry : entries) {
+				// the count first: the cart read after it holds at least the changes counted
+				long count = entry.changes.get();
+				if (count != entry.written.get()) {
+					written.put(entry, count);
+					snapshots.put(entry.userId, entry.cart);
+				}
+			}
+			if (snapshots.isEmpty()) {
+				return;
+			}
+			try {
+				flushTimer.record(() -> transactionTemplate.execute(status -> {
+					for (User user : userRepository.findWithCartByIdIn(snapshots.keySet())) {
+						copyLines(snapshots.get(user.getId()), user.getCart());
+					}
+					return null;
+				}));
+			} catch (RuntimeException e) {
+				dirty.addAll(written.keySet());
+				throw e;
+			}
+			written.forEach((entry, count) -> entry.written.accumulateAndGet(count, Math::max));
+			writes.increment(written.size());
+		}
+	}
+
+	/**
+	 * Bring the managed cart to the lines of the copy. Dirty checking writes the changed lines only.
+	 */
+	private static void copyLines(Cart from, Cart to) {
+		for (CartItem line : new ArrayList<>(to.getItems())) {
+			if (from.getLine(line.getItemId()) == null) {
+				to.setItemQuantity(line.getItem(), 0);
+			}
+		}
+		for (CartItem line : from.getItems()) {
+			to.setItemQuantity(line.getItem(), line.getQuantity());
+		}
+		// always updates the cart row, moving its version on even when the changes cancelled out
+		to.setLastModified(new Date());
+	}
+
+	private Item item(long itemId) {
+		return itemService.findById(itemId)
+				.orElseThrow(() -> new APINotFoundException("Item not found - id: " + itemId));
+	}
+
+	private static final class CartEntry {
+
+		final long userId;
+
+		/**
+		 * The current cart, replaced by every change. Null until loaded.
+		 */
+		volatile Cart cart;
+
+		/**
+		 * Lines of the cart plus one, as counted in lines. Written holding the entry.
+		 */
+		volatile int weight;
+
+		/**
+		 * Changes applied to the cart, and how many of them are in the database.
+		 */
+		final AtomicLong changes = new AtomicLong();
+
+		final AtomicLong written = new AtomicLong();
+
+		volatile long lastAccess;
+
+		/**
+		 * Set holding the entry when it leaves the map; a change finding it set starts over on a new entry.
+		 */
+		volatile boolean evicted;
+
+		CartEntry(long userId) {
+			this.userId = userId;
+		}
+
+		boolean changed() {
+			return changes.get() != written.get();
+		}
+	}
+}
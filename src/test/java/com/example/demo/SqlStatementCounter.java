@@ -0,0 +1,58 @@
+package com.example.demo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate statement inspector recording every SQL statement, so tests can assert how many statements
+ * an operation issues. Register it with the
+ * spring.jpa.properties.hibernate.session_factory.statement_inspector property.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+	private static final List<String> statements = new ArrayList<>();
+
+	@Override
+	public String inspect(String sql) {
+		synchronized (statements) {
+			statements.add(sql);
+		}
+		return sql;
+	}
+
+	/**
+	 * Forget all recorded statements.
+	 */
+	public static void reset() {
+		synchronized (statements) {
+			statements.clear();
+		}
+	}
+
+	/**
+	 * Count the recorded statements starting with the given keyword, e.g. "insert".
+	 * @param keyword
+	 * @return
+	 */
+	public static int count(String keyword) {
+		String prefix = keyword.toLowerCase(Locale.ROOT);
+		synchronized (statements) {
+			return (int) statements.stream()
+					.filter(sql -> sql.trim().toLowerCase(Locale.ROOT).startsWith(prefix))
+					.count();
+		}
+	}
+
+	/**
+	 * Count all recorded statements.
+	 * @return
+	 */
+	public static int total() {
+		synchronized (statements) {
+			return statements.size();
+		}
+	}
+}
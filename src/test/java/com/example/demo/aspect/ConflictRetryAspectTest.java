@@ -0,0 +1,97 @@
+package com.example.demo.aspect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import com.example.demo.exceptions.APIConflictException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ConflictRetryAspectTest {
+
+    /**
+     * Fails with the given exception for the first failures calls.
+     */
+    static class Operation {
+
+        int calls;
+        int failures;
+        RuntimeException failure = new ObjectOptimisticLockingFailureException(Object.class, 1L);
+
+        @RetryOnConflict
+        public int run() {
+            calls++;
+            if (calls <= failures) {
+                throw failure;
+            }
+            return calls;
+        }
+    }
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private Operation target;
+
+    private Operation operation;
+
+    @Before
+    public void setUp() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        ConflictRetryAspect aspect = new ConflictRetryAspect(3, 0, beanFactory.getBeanProvider(MeterRegistry.class));
+
+        target = new Operation();
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        operation = factory.getProxy();
+    }
+
+    private double count(String name) {
+        return meterRegistry.counter(name, "operation", "Operation.run").count();
+    }
+
+    @Test
+    public void should_retry_untilSuccess() {
+        target.failures = 2;
+
+        assertEquals(3, operation.run());
+        assertEquals(2, count("concurrency.conflicts"), 0);
+        assertEquals(2, count("concurrency.retries"), 0);
+        assertEquals(0, count("concurrency.retries.exhausted"), 0);
+    }
+
+    @Test
+    public void should_retry_boundedThenConflict() {
+        target.failures = Integer.MAX_VALUE;
+
+        try {
+            operation.run();
+            fail("expected a conflict");
+        } catch (APIConflictException ex) {
+            assertEquals(target.failure, ex.getCause());
+        }
+        assertEquals(3, target.calls);
+        assertEquals(1, count("concurrency.retries.exhausted"), 0);
+    }
+
+    @Test(expected = DataIntegrityViolationException.class)
+    public void shouldNot_retry_otherFailures() {
+        target.failures = 1;
+        target.failure = new DataIntegrityViolationException("not null");
+
+        try {
+            operation.run();
+        } finally {
+            assertEquals(1, target.calls);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.demo.benchmark;
+
+import java.math.BigDecimal;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+
+/**
+ * Catalog and cart data shared by the benchmarks.
+ */
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Items with ids 1 to count and prices between 1.00 and 9.99.
+     */
+    static Item[] items(int count) {
+        Item[] items = new Item[count];
+        for (int i = 0; i < count; i++) {
+            items[i] = new Item((long) i + 1, "item " + i, BigDecimal.valueOf(100 + i % 900, 2), "Description of item " + i);
+        }
+        return items;
+    }
+
+    /**
+     * A cart owned by a user, with one line per item.
+     */
+    static Cart cart(Item[] items, int quantity) {
+        Cart cart = new Cart();
+        cart.setId(1L);
+        for (Item item : items) {
+            cart.addItem(item, quantity);
+        }
+        User user = new User(1L, "benchmark", "hashedPassword", cart);
+        cart.setUser(user);
+        return cart;
+    }
+}
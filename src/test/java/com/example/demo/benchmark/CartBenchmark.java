@@ -0,0 +1,77 @@
+package com.example.demo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.UserOrder;
+
+/**
+ * In-memory cart operations and order creation at realistic cart sizes.
+ * Each cart benchmark adds and removes the same units, so the cart keeps its size across invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int lines;
+
+    private Cart cart;
+
+    private Item existingItem;
+
+    private Item newItem;
+
+    @Setup
+    public void setUp() {
+        Item[] items = BenchmarkFixtures.items(lines + 1);
+        Item[] cartItems = new Item[lines];
+        System.arraycopy(items, 0, cartItems, 0, lines);
+        cart = BenchmarkFixtures.cart(cartItems, 5);
+        existingItem = items[lines / 2];
+        newItem = items[lines];
+    }
+
+    @Benchmark
+    public Cart addAndRemoveUnitOfExistingLine() {
+        cart.addItem(existingItem, 1);
+        cart.removeItem(existingItem, 1);
+        return cart;
+    }
+
+    @Benchmark
+    public Cart addAndRemoveManyUnitsOfExistingLine() {
+        cart.addItem(existingItem, 500);
+        cart.removeItem(existingItem, 500);
+        return cart;
+    }
+
+    @Benchmark
+    public Cart addAndRemoveNewLine() {
+        cart.addItem(newItem, 1);
+        cart.removeItem(newItem, 1);
+        return cart;
+    }
+
+    @Benchmark
+    public UserOrder createOrderFromCart() {
+        return UserOrder.createFromCart(cart);
+    }
+}
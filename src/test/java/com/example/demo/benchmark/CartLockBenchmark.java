@@ -0,0 +1,120 @@
+package com.example.demo.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.service.CartLockManager;
+import com.example.demo.service.CartService;
+
+/**
+ * Cart changes from 8 threads under each cart.locking.mode, against the embedded H2 database. With a hot cart
+ * every thread changes the same cart, otherwise each thread has its own. Each operation adds a unit and removes
+ * it again, so the cart does not grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(CartLockBenchmark.THREADS)
+@Fork(1)
+public class CartLockBenchmark {
+
+    static final int THREADS = 8;
+
+    @Param({"optimistic", "striped"})
+    public String mode;
+
+    @Param({"true", "false"})
+    public boolean hotCart;
+
+    private ConfigurableApplicationContext context;
+
+    private CartService cartService;
+
+    private CartLockManager cartLocks;
+
+    private Long itemId;
+
+    private final AtomicInteger threadIds = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Writer {
+
+        ModifyCartRequest request;
+
+        @Setup
+        public void setUp(CartLockBenchmark benchmark) {
+            int user = benchmark.hotCart ? 0 : benchmark.threadIds.getAndIncrement() % THREADS;
+            request = new ModifyCartRequest("benchmark" + user, benchmark.itemId, 1);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = new SpringApplicationBuilder(SareetaApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        "cart.locking.mode=" + mode,
+                        "concurrency.retry.max-attempts=1000",
+                        "spring.datasource.url=jdbc:h2:mem:cartlock" + mode + hotCart + ";DB_CLOSE_DELAY=-1")
+                .run();
+        cartService = context.getBean(CartService.class);
+        cartLocks = context.getBean(CartLockManager.class);
+        ItemRepository itemRepository = context.getBean(ItemRepository.class);
+        CartRepository cartRepository = context.getBean(CartRepository.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+
+        itemId = context.getBean(TransactionTemplate.class).execute(status -> {
+            Item item = itemRepository.save(new Item(null, "benchmark item", BigDecimal.valueOf(1.99), "Description"));
+            for (int i = 0; i < THREADS; i++) {
+                Cart cart = new Cart();
+                cart.addItem(item, 1);
+                cartRepository.save(cart);
+                userRepository.save(new User(0, "benchmark" + i, "hashedPassword", cart));
+            }
+            return item.getId();
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Cart addThenRemove(Writer writer) {
+        ModifyCartRequest request = writer.request;
+        cartLocks.withLock(request.getUsername(), () -> cartService.addToCart(request));
+        return cartLocks.withLock(request.getUsername(), () -> cartService.removeFromCart(request));
+    }
+}
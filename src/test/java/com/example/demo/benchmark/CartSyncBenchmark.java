@@ -0,0 +1,122 @@
+package com.example.demo.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BulkModifyCartRequest;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.service.CartService;
+
+/**
+ * Syncing a cart of the given number of lines, one call per line against one bulk call, against the embedded
+ * H2 database. Every sync sets the lines to alternating quantities so each one writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartSyncBenchmark {
+
+    private static final String USERNAME = "benchmark";
+
+    @Param({"40"})
+    public int lines;
+
+    private ConfigurableApplicationContext context;
+
+    private CartService cartService;
+
+    private Long[] itemIds;
+
+    private int round;
+
+    @Setup
+    public void setUp() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = new SpringApplicationBuilder(SareetaApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:cartsync" + lines + ";DB_CLOSE_DELAY=-1")
+                .run();
+        cartService = context.getBean(CartService.class);
+        ItemRepository itemRepository = context.getBean(ItemRepository.class);
+        CartRepository cartRepository = context.getBean(CartRepository.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+
+        itemIds = context.getBean(TransactionTemplate.class).execute(status -> {
+            Long[] ids = new Long[lines];
+            Cart cart = new Cart();
+            for (int i = 0; i < lines; i++) {
+                Item item = itemRepository.save(new Item(null, "benchmark item " + i, BigDecimal.valueOf(1.99), "Description " + i));
+                cart.addItem(item, 1);
+                ids[i] = item.getId();
+            }
+            cartRepository.save(cart);
+            userRepository.save(new User(0, USERNAME, "hashedPassword", cart));
+            return ids;
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Alternate between one and two units per line, so the sync changes every line.
+     */
+    private boolean grow() {
+        return round++ % 2 == 0;
+    }
+
+    @Benchmark
+    public Cart syncOneCallPerLine() {
+        boolean grow = grow();
+        Cart cart = null;
+        for (Long itemId : itemIds) {
+            ModifyCartRequest request = new ModifyCartRequest(USERNAME, itemId, 1);
+            cart = grow ? cartService.addToCart(request) : cartService.removeFromCart(request);
+        }
+        return cart;
+    }
+
+    @Benchmark
+    public Cart syncBulk() {
+        int quantity = grow() ? 2 : 1;
+        List<CartOperation> operations = new ArrayList<>(itemIds.length);
+        for (Long itemId : itemIds) {
+            operations.add(new CartOperation(CartOperation.Type.SET, itemId, quantity));
+        }
+        return cartService.modifyCart(new BulkModifyCartRequest(USERNAME, operations));
+    }
+}
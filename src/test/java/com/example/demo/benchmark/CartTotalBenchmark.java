@@ -0,0 +1,69 @@
+package com.example.demo.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+
+/**
+ * Cost of keeping the cart total up to date on an add, with the total in minor units against the previous
+ * BigDecimal arithmetic. Compare the gc.alloc.rate.norm column (bytes allocated per operation) reported by the
+ * gc profiler, which the benchmark profile enables.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartTotalBenchmark {
+
+    private Cart cart;
+
+    private Item item;
+
+    private BigDecimal total;
+
+    private BigDecimal unitPrice;
+
+    @Setup
+    public void setUp() {
+        Item[] items = BenchmarkFixtures.items(10);
+        cart = BenchmarkFixtures.cart(items, 5);
+        item = items[5];
+        total = cart.getTotal();
+        unitPrice = item.getPrice();
+    }
+
+    /**
+     * Add and remove a unit of an existing line, the total kept in cents.
+     */
+    @Benchmark
+    public long addUnitMinorUnits() {
+        cart.addItem(item, 1);
+        cart.removeItem(item, 1);
+        return cart.getTotalCents();
+    }
+
+    /**
+     * The same total updates as BigDecimal, as the cart did before.
+     */
+    @Benchmark
+    public BigDecimal addUnitBigDecimal() {
+        total = total.add(unitPrice.multiply(BigDecimal.valueOf(1)));
+        total = total.subtract(unitPrice.multiply(BigDecimal.valueOf(1)));
+        return total;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.demo.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.service.ItemSearchIndex;
+
+/**
+ * Catalog search latency on synthetic catalogs of up to one million items, built from a 50 x 50 vocabulary
+ * of adjectives and nouns so that terms have realistic selectivity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ItemSearchBenchmark {
+
+    private static final int VOCABULARY = 50;
+
+    @Param({"10000", "100000", "1000000"})
+    public int catalogSize;
+
+    private ItemSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        List<Item> catalog = new ArrayList<>(catalogSize);
+        for (int i = 0; i < catalogSize; i++) {
+            String adjective = "adjective" + (char) ('a' + i % 25) + i % VOCABULARY;
+            String noun = "noun" + (i / VOCABULARY) % VOCABULARY;
+            catalog.add(new Item((long) i, adjective + " " + noun + " " + i, BigDecimal.ONE, "A " + noun + " that is " + adjective));
+        }
+        index = new ItemSearchIndex();
+        index.rebuild(catalog);
+    }
+
+    @Benchmark
+    public Page<Item> singleTerm() {
+        return index.search("noun17", PageRequest.of(0, 20));
+    }
+
+    @Benchmark
+    public Page<Item> multiTermPrefix() {
+        return index.search("adjectivec2 noun1", PageRequest.of(0, 20));
+    }
+
+    @Benchmark
+    public Page<Item> exactItemNumber() {
+        return index.search("123456", PageRequest.of(0, 20));
+    }
+}
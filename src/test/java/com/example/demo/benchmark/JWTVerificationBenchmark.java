@@ -0,0 +1,78 @@
+package com.example.demo.benchmark;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.example.demo.security.JWTTokenVerifier;
+import com.example.demo.security.SecurityConstants;
+
+/**
+ * Per-request cost of verifying the Authorization token:
+ * the original code building the algorithm and verifier on every request,
+ * a single shared verifier, and the shared verifier behind the verified token cache.
+ * Signing measures the token creation done on every successful login.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JWTVerificationBenchmark {
+
+    private String token;
+
+    private JWTVerifier sharedVerifier;
+
+    private JWTTokenVerifier cachingVerifier;
+
+    @Setup
+    public void setUp() {
+        token = JWT.create()
+                .withSubject("testuser")
+                .withExpiresAt(new Date(System.currentTimeMillis() + SecurityConstants.EXPIRATION_TIME))
+                .sign(SecurityConstants.ALGORITHM);
+        sharedVerifier = JWT.require(SecurityConstants.ALGORITHM).build();
+        cachingVerifier = new JWTTokenVerifier(SecurityConstants.ALGORITHM,
+                SecurityConstants.VERIFIED_TOKEN_CACHE_SIZE, SecurityConstants.VERIFIED_TOKEN_CACHE_TTL);
+    }
+
+    @Benchmark
+    public String sign() {
+        return JWT.create()
+                .withSubject("testuser")
+                .withExpiresAt(new Date(System.currentTimeMillis() + SecurityConstants.EXPIRATION_TIME))
+                .sign(SecurityConstants.ALGORITHM);
+    }
+
+    @Benchmark
+    public String verifyNewVerifierPerRequest() {
+        return JWT.require(Algorithm.HMAC512(SecurityConstants.SECRET.getBytes())).build()
+                .verify(token)
+                .getSubject();
+    }
+
+    @Benchmark
+    public String verifySharedVerifier() {
+        return sharedVerifier.verify(token).getSubject();
+    }
+
+    @Benchmark
+    public String verifyCached() {
+        return cachingVerifier.verify(token);
+    }
+}
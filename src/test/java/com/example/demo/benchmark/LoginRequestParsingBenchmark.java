@@ -0,0 +1,56 @@
+package com.example.demo.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.requests.LoginRequest;
+import com.example.demo.security.LoginRequestReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Cost of reading the login body: a new ObjectMapper binding a User entity per login, as the filter used to,
+ * against the shared reader binding the LoginRequest DTO.
+ * Add -prof gc to the JMH arguments to see the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginRequestParsingBenchmark {
+
+    private byte[] body;
+
+    private LoginRequestReader loginRequestReader;
+
+    @Setup
+    public void setUp() {
+        body = "{\"username\":\"testuser\",\"password\":\"testpassword\"}".getBytes(StandardCharsets.UTF_8);
+        loginRequestReader = new LoginRequestReader(new ObjectMapper());
+    }
+
+    @Benchmark
+    public User newObjectMapperPerLogin() throws IOException {
+        return new ObjectMapper().readValue(new ByteArrayInputStream(body), User.class);
+    }
+
+    @Benchmark
+    public LoginRequest sharedReader() throws IOException {
+        return loginRequestReader.read(new ByteArrayInputStream(body));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.demo.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BulkModifyCartRequest;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.service.CartService;
+import com.example.demo.service.OrderService;
+
+/**
+ * Order submission load test: every thread fills the cart of its own user with the given number of lines and
+ * checks it out, against the embedded H2 database, with the default settings and with the production
+ * persistence profile (see application-production.properties).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class OrderSubmitBenchmark {
+
+    private static final int USERS = 8;
+
+    @Param({"default", "production"})
+    public String profile;
+
+    @Param({"10"})
+    public int lines;
+
+    private ConfigurableApplicationContext context;
+
+    private CartService cartService;
+
+    private OrderService orderService;
+
+    private List<CartOperation> fill;
+
+    private final AtomicInteger nextUser = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        String url = "jdbc:h2:mem:ordersubmit-" + profile + lines + ";DB_CLOSE_DELAY=-1"
+                + ("production".equals(profile) ? ";QUERY_CACHE_SIZE=64" : "");
+        context = new SpringApplicationBuilder(SareetaApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(profile)
+                .properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+                .run("--spring.datasource.url=" + url);
+        cartService = context.getBean(CartService.class);
+        orderService = context.getBean(OrderService.class);
+        ItemRepository itemRepository = context.getBean(ItemRepository.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+
+        fill = context.getBean(TransactionTemplate.class).execute(status -> {
+            List<CartOperation> operations = new ArrayList<>();
+            for (int i = 0; i < lines; i++) {
+                Item item = itemRepository.save(new Item(null, "load item " + i, BigDecimal.valueOf(4.99), "Description " + i));
+                operations.add(new CartOperation(CartOperation.Type.ADD, item.getId(), 2));
+            }
+            for (int i = 0; i < USERS; i++) {
+                userRepository.save(new User(0, "load" + i, "hashedPassword", new Cart()));
+            }
+            return operations;
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * The user of one benchmark thread, so threads do not conflict on a cart.
+     */
+    @State(Scope.Thread)
+    public static class Customer {
+
+        String username;
+
+        @Setup
+        public void setUp(OrderSubmitBenchmark benchmark) {
+            username = "load" + benchmark.nextUser.getAndIncrement() % USERS;
+        }
+    }
+
+    @Benchmark
+    public UserOrder fillCartAndSubmit(Customer customer) {
+        cartService.modifyCart(new BulkModifyCartRequest(customer.username, fill));
+        return orderService.submit(customer.username);
+    }
+}
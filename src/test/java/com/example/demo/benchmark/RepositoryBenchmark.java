@@ -0,0 +1,124 @@
+package com.example.demo.benchmark;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+
+/**
+ * Repository calls on the request paths, against the embedded H2 database.
+ * The application context is started once per trial without the web server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    private static final String USERNAME = "benchmark";
+
+    private static final int ORDERS = 50;
+
+    @Param({"10", "100"})
+    public int lines;
+
+    private ConfigurableApplicationContext context;
+
+    private UserRepository userRepository;
+
+    private ItemRepository itemRepository;
+
+    private OrderRepository orderRepository;
+
+    private User user;
+
+    private Long itemId;
+
+    @Setup
+    public void setUp() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = new SpringApplicationBuilder(SareetaApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:benchmark" + lines + ";DB_CLOSE_DELAY=-1")
+                .run();
+        userRepository = context.getBean(UserRepository.class);
+        itemRepository = context.getBean(ItemRepository.class);
+        orderRepository = context.getBean(OrderRepository.class);
+        CartRepository cartRepository = context.getBean(CartRepository.class);
+        TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+
+        transactionTemplate.execute(status -> {
+            Cart cart = new Cart();
+            for (int i = 0; i < lines; i++) {
+                Item item = itemRepository.save(new Item(null, "benchmark item " + i, BigDecimal.valueOf(1.99), "Description " + i));
+                cart.addItem(item, 5);
+            }
+            cartRepository.save(cart);
+            user = userRepository.save(new User(0, USERNAME, "hashedPassword", cart));
+            for (int i = 0; i < ORDERS; i++) {
+                UserOrder order = UserOrder.createFromCart(cart);
+                order.setUser(user);
+                orderRepository.save(order);
+            }
+            itemId = cart.getItems().iterator().next().getItemId();
+            return null;
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public User findByUsername() {
+        return userRepository.findByUsername(USERNAME);
+    }
+
+    @Benchmark
+    public User findWithCartByUsername() {
+        return userRepository.findWithCartByUsername(USERNAME);
+    }
+
+    @Benchmark
+    public Optional<Item> findItemById() {
+        return itemRepository.findById(itemId);
+    }
+
+    @Benchmark
+    public List<UserOrder> findFirstOrderHistoryPage() {
+        return orderRepository.findByUserIdOrderByIdDesc(user.getId(), PageRequest.of(0, 20));
+    }
+}
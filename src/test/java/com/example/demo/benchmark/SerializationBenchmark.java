@@ -0,0 +1,59 @@
+package com.example.demo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.UserOrder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Jackson serialization of the cart and order response bodies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int lines;
+
+    private ObjectMapper objectMapper;
+
+    private Cart cart;
+
+    private UserOrder order;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        cart = BenchmarkFixtures.cart(BenchmarkFixtures.items(lines), 5);
+        order = UserOrder.createFromCart(cart);
+        order.setId(1L);
+    }
+
+    @Benchmark
+    public byte[] serializeCart() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(cart);
+    }
+
+    @Benchmark
+    public byte[] serializeOrder() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(order);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.demo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.service.UserDirectory;
+
+/**
+ * Username resolutions of one request, as the login path and the controllers make them: each one a query
+ * by username before, one query per request at most with the directory, none once the username is cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserLookupBenchmark {
+
+    private static final String USERNAME = "benchmark";
+
+    @Param({"1", "3"})
+    public int lookupsPerRequest;
+
+    private ConfigurableApplicationContext context;
+
+    private UserRepository userRepository;
+
+    private UserDirectory userDirectory;
+
+    @Setup
+    public void setUp() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = new SpringApplicationBuilder(SareetaApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:userlookup" + lookupsPerRequest + ";DB_CLOSE_DELAY=-1")
+                .run();
+        userRepository = context.getBean(UserRepository.class);
+        userDirectory = context.getBean(UserDirectory.class);
+        Cart cart = context.getBean(CartRepository.class).save(new Cart());
+        userRepository.save(new User(0, USERNAME, "hashedPassword", cart));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void repository(Blackhole blackhole) {
+        for (int i = 0; i < lookupsPerRequest; i++) {
+            blackhole.consume(userRepository.findByUsername(USERNAME));
+        }
+    }
+
+    @Benchmark
+    public void directory(Blackhole blackhole) {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        try {
+            for (int i = 0; i < lookupsPerRequest; i++) {
+                blackhole.consume(userDirectory.find(USERNAME));
+            }
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    /**
+     * Every request resolving a username the directory has not cached yet, the memo alone saving queries.
+     */
+    @Benchmark
+    public void directoryCold(Blackhole blackhole) {
+        userDirectory.invalidate(USERNAME);
+        directory(blackhole);
+    }
+}
@@ -6,18 +6,28 @@ import com.example.demo.exceptions.APINotFoundException;
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.StockRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BulkModifyCartRequest;
+import com.example.demo.model.requests.CartOperation;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartResponse;
+import com.example.demo.service.CartService;
+import com.example.demo.service.InventoryService;
+import com.example.demo.service.StripedCartLockManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.Optional;
 
 import static org.junit.Assert.*;
@@ -29,19 +39,21 @@ public class CartControllerTest {
     private CartController cartController;
 
     private UserRepository userRepo = mock(UserRepository.class);
-    private CartRepository cartRepo = mock(CartRepository.class);
     private ItemRepository itemRepo = mock(ItemRepository.class);
 
     @Before
     public void setUp() {
         /**
-         * Create cartController object,
-         * Inject the mock objects
+         * Create cartService with the mock objects,
+         * Inject it into the cartController object
          */
+        CartService cartService = new CartService();
+        TestUtils.injectObjects(cartService, "userRepository", userRepo);
+        TestUtils.injectObjects(cartService, "itemRepository", itemRepo);
+        TestUtils.injectObjects(cartService, "inventoryService", new InventoryService(mock(StockRepository.class), mock(PlatformTransactionManager.class), 60_000, 1000, new SimpleMeterRegistry()));
         cartController = new CartController();
-        TestUtils.injectObjects(cartController, "userRepository", userRepo);
-        TestUtils.injectObjects(cartController, "cartRepository", cartRepo);
-        TestUtils.injectObjects(cartController, "itemRepository", itemRepo);
+        TestUtils.injectObjects(cartController, "cartService", cartService);
+        TestUtils.injectObjects(cartController, "cartLocks", new StripedCartLockManager(16, 1000, new SimpleMeterRegistry()));
     }
 
     private ModifyCartRequest initModifyRequest(String username, long itemId, int quantity){
@@ -51,7 +63,7 @@ public class CartControllerTest {
     @Test(expected = APINotFoundException.class)
     public void shouldNot_addToCart_usernameNotFound() {
         String username = "testuser";
-        when(userRepo.findByUsername(username)).thenReturn(null);
+        when(userRepo.findWithCartByUsername(username)).thenReturn(null);
         ModifyCartRequest request = initModifyRequest(username, 1L, 1);
         cartController.addToCart(request);
     }
@@ -60,7 +72,7 @@ public class CartControllerTest {
     public void shouldNot_addToCart_itemNotFound() {
         String username = "testuser";
         User user = new User(1L, username, "hashedPassword", new Cart());
-        when(userRepo.findByUsername(username)).thenReturn(user);
+        when(userRepo.findWithCartByUsername(username)).thenReturn(user);
         when(itemRepo.findById(1L)).thenReturn(Optional.empty());
         ModifyCartRequest request = initModifyRequest(username, 1L, 1);
         cartController.addToCart(request);
@@ -79,21 +91,24 @@ public class CartControllerTest {
         ModifyCartRequest request = initModifyRequest(username, 1L, 1);
 
         // mock function
-        when(userRepo.findByUsername(username)).thenReturn(user);
+        when(userRepo.findWithCartByUsername(username)).thenReturn(user);
         when(itemRepo.findById(1L)).thenReturn(Optional.of(item));
 
         // Call the addToCart method
-        ResponseEntity<Cart> response = cartController.addToCart(request);
-        Cart actual = response.getBody();
+        ResponseEntity<CartResponse> response = cartController.addToCart(request);
+        CartResponse actual = response.getBody();
 
         // assert
         assertNotNull(response);
         assertEquals(response.getStatusCode(), HttpStatus.OK);
 
         // verify user
-        assertEquals(actual.getUser(), user);
-        // verify items in cart
-        assertEquals(actual.getItems(), Arrays.asList(item));
+        assertEquals(actual.getUser().getId(), user.getId());
+        assertEquals(actual.getUser().getUsername(), username);
+        // verify items in cart: a single line holding one unit
+        assertEquals(actual.getItems().size(), 1);
+        assertEquals(actual.getLine(1L).getItem(), item);
+        assertEquals(actual.getLine(1L).getQuantity(), 1);
         // verify total
         assertEquals(actual.getTotal(), BigDecimal.valueOf(11.95));
     }
@@ -112,15 +127,16 @@ public class CartControllerTest {
         ModifyCartRequest request = initModifyRequest(username, 1L, 1);
 
         // mock function
-        when(userRepo.findByUsername(username)).thenReturn(user);
+        when(userRepo.findWithCartByUsername(username)).thenReturn(user);
         when(itemRepo.findById(1L)).thenReturn(Optional.of(item));
 
         // call the addToCart method
-        ResponseEntity<Cart> response = cartController.addToCart(request);
-        Cart actual = response.getBody();
+        ResponseEntity<CartResponse> response = cartController.addToCart(request);
+        CartResponse actual = response.getBody();
 
-        // verify items in cart
-        assertEquals(actual.getItems(), Arrays.asList(item, item));
+        // verify the existing line is incremented instead of adding a second line
+        assertEquals(actual.getItems().size(), 1);
+        assertEquals(actual.getLine(1L).getQuantity(), 2);
 
         // verify total
         assertEquals(actual.getTotal().compareTo(BigDecimal.valueOf(11.95*2)), 0);
@@ -141,15 +157,17 @@ public class CartControllerTest {
         ModifyCartRequest request = initModifyRequest(username, 2L, 1);
 
         // mock function
-        when(userRepo.findByUsername(username)).thenReturn(user);
+        when(userRepo.findWithCartByUsername(username)).thenReturn(user);
         when(itemRepo.findById(2L)).thenReturn(Optional.of(item2));
 
         // call the addToCart method
-        ResponseEntity<Cart> response = cartController.addToCart(request);
-        Cart actual = response.getBody();
+        ResponseEntity<CartResponse> response = cartController.addToCart(request);
+        CartResponse actual = response.getBody();
 
         // verify items in cart
-        assertEquals(actual.getItems(), Arrays.asList(item1, item2));
+        assertEquals(actual.getItems().size(), 2);
+        assertEquals(actual.getLine(1L).getItem(), item1);
+        assertEquals(actual.getLine(2L).getItem(), item2);
 
         // verify total
         assertEquals(actual.getTotal().compareTo(BigDecimal.valueOf(11.95 + 13.90)), 0);
@@ -159,7 +177,7 @@ public class CartControllerTest {
     public void shouldNot_removeFromCart_usernameNotFound() {
         String username = "testuser";
         Item item1 = new Item(1L, "item 1", BigDecimal.valueOf(11.95), "Item 1 description");
-        when(userRepo.findByUsername(username)).thenReturn(null);
+        when(userRepo.findWithCartByUsername(username)).thenReturn(null);
         when(itemRepo.findById(1L)).thenReturn(Optional.of(item1));
         ModifyCartRequest request = initModifyRequest(username, 1L, 1);
         cartController.removeFromCart(request);
@@ -170,7 +188,7 @@ public class CartControllerTest {
         String username = "testuser";
         User user = new User(1L, username, "hashedPassword", new Cart());
         Item item1 = new Item(1L, "item 1", BigDecimal.valueOf(11.95), "Item 1 description");
-        when(userRepo.findByUsername(username)).thenReturn(user);
+        when(userRepo.findWithCartByUsername(username)).thenReturn(user);
         when(itemRepo.findById(1L)).thenReturn(Optional.empty());
         ModifyCartRequest request = initModifyRequest(username, 1L, 1);
         cartController.removeFromCart(request);
@@ -193,21 +211,22 @@ public class CartControllerTest {
         cart.setUser(user);
 
         // mock function: return user, find second item
-        when(userRepo.findByUsername(user.getUsername())).thenReturn(user);
+        when(userRepo.findWithCartByUsername(user.getUsername())).thenReturn(user);
         when(itemRepo.findById(2L)).thenReturn(Optional.of(item2));
 
         // create request to remove item 2
         ModifyCartRequest request = initModifyRequest(user.getUsername(), 2L, 1);
 
         // make function call
-        ResponseEntity<Cart> response = cartController.removeFromCart(request);
+        ResponseEntity<CartResponse> response = cartController.removeFromCart(request);
 
         // verify status
         assertEquals(response.getStatusCode(), HttpStatus.OK);
 
         // verify cart item
-        Cart actual = response.getBody();
-        assertEquals(actual.getItems(), Arrays.asList(item1));
+        CartResponse actual = response.getBody();
+        assertEquals(actual.getItems().size(), 1);
+        assertEquals(actual.getLine(1L).getItem(), item1);
 
         // verify the total is correct
         assertEquals(actual.getTotal().compareTo(item1.getPrice()), 0);
@@ -220,22 +239,21 @@ public class CartControllerTest {
         Item item1 = new Item(1L, "item 1", BigDecimal.valueOf(11.95), "Item 1 description");
         Cart cart = new Cart();
         cart.setId(1L);
-        cart.setItems(new ArrayList<>());
 
         // create user and add user to cart
         User user = new User(1L, "testuser", "hashedPassword", cart);
         cart.setUser(user);
 
-        // mock function, findByUsername, findById
-        when(userRepo.findByUsername(user.getUsername())).thenReturn(user);
+        // mock function, findWithCartByUsername, findById
+        when(userRepo.findWithCartByUsername(user.getUsername())).thenReturn(user);
         when(itemRepo.findById(1L)).thenReturn(Optional.of(item1));
 
         // create ModifyCartRequest
         ModifyCartRequest request = initModifyRequest(user.getUsername(), 1L, 1);
 
         // call the removeFromCart method
-        ResponseEntity<Cart> response = cartController.removeFromCart(request);
-        Cart actual = response.getBody();
+        ResponseEntity<CartResponse> response = cartController.removeFromCart(request);
+        CartResponse actual = response.getBody();
 
         // verify status
         assertEquals(response.getStatusCode(), HttpStatus.OK);
@@ -260,21 +278,21 @@ public class CartControllerTest {
         User user = new User(1L, "testuser", "hashedPassword", cart);
         cart.setUser(user);
 
-        // mock function, findByUsername, findById
-        when(userRepo.findByUsername(user.getUsername())).thenReturn(user);
+        // mock function, findWithCartByUsername, findById
+        when(userRepo.findWithCartByUsername(user.getUsername())).thenReturn(user);
         when(itemRepo.findById(1L)).thenReturn(Optional.of(templateItem.clone()));
 
         // create ModifyCartRequest with quantity of 2
         ModifyCartRequest request = initModifyRequest(user.getUsername(), 1L, 2);
 
         // call the removeFromCart method
-        ResponseEntity<Cart> response = cartController.removeFromCart(request);
-        Cart actual = response.getBody();
+        ResponseEntity<CartResponse> response = cartController.removeFromCart(request);
+        CartResponse actual = response.getBody();
 
         // verify status
         assertEquals(response.getStatusCode(), HttpStatus.OK);
 
-        // verify cart quantity is 1
+        // verify the line is removed
         assertEquals(actual.getItems().size(), 0);
 
         // verify the total is correct
@@ -295,24 +313,131 @@ public class CartControllerTest {
         User user = new User(1L, "testuser", "hashedPassword", cart);
         cart.setUser(user);
 
-        // mock function, findByUsername, findById
-        when(userRepo.findByUsername(user.getUsername())).thenReturn(user);
+        // mock function, findWithCartByUsername, findById
+        when(userRepo.findWithCartByUsername(user.getUsername())).thenReturn(user);
         when(itemRepo.findById(1L)).thenReturn(Optional.of(templateItem.clone()));
 
         // create ModifyCartRequest
         ModifyCartRequest request = initModifyRequest(user.getUsername(), 1L, 1);
 
         // call the removeFromCart method
-        ResponseEntity<Cart> response = cartController.removeFromCart(request);
-        Cart actual = response.getBody();
+        ResponseEntity<CartResponse> response = cartController.removeFromCart(request);
+        CartResponse actual = response.getBody();
 
         // verify status
         assertEquals(response.getStatusCode(), HttpStatus.OK);
 
         // verify cart quantity is 1
         assertEquals(actual.getItems().size(), 1);
+        assertEquals(actual.getLine(1L).getQuantity(), 1);
 
         // verify the total is correct
         assertEquals(actual.getTotal().compareTo(BigDecimal.valueOf(11.95)), 0);
     }
+
+    @Test
+    public void should_addToCart_largeQuantityKeepsOneLine() {
+
+        // create cart and user
+        Item item = new Item(1L, "item 1", BigDecimal.valueOf(11.95), "Item 1 description");
+        Cart cart = new Cart();
+        cart.setId(1L);
+        User user = new User(1L, "testuser", "hashedPassword", cart);
+        cart.setUser(user);
+
+        // mock function, findWithCartByUsername, findById
+        when(userRepo.findWithCartByUsername(user.getUsername())).thenReturn(user);
+        when(itemRepo.findById(1L)).thenReturn(Optional.of(item));
+
+        // add then remove a large quantity
+        cartController.addToCart(initModifyRequest(user.getUsername(), 1L, 500));
+        CartResponse actual = cartController.removeFromCart(initModifyRequest(user.getUsername(), 1L, 200)).getBody();
+
+        // verify the cart holds a single line with the remaining units
+        assertEquals(actual.getItems().size(), 1);
+        assertEquals(actual.getLine(1L).getQuantity(), 300);
+        assertEquals(actual.getTotal().compareTo(BigDecimal.valueOf(11.95).multiply(BigDecimal.valueOf(300))), 0);
+    }
+
+    @Test
+    public void should_getCart_notModifiedUntilVersionChanges() {
+
+        String username = "testuser";
+        Cart cart = new Cart();
+        User user = new User(1L, username, "hashedPassword", cart);
+        cart.setId(1L);
+        cart.setUser(user);
+        cart.setVersion(2);
+        cart.setLastModified(new Date(1_500_000_000_000L));
+        when(userRepo.findWithCartByUsername(username)).thenReturn(user);
+
+        ResponseEntity<CartResponse> response = cartController.getCart(username, null);
+        String etag = response.getHeaders().getETag();
+        assertEquals("\"cart-1-2\"", etag);
+        assertEquals(1_500_000_000_000L, response.getHeaders().getLastModified());
+        assertEquals("no-cache, private", response.getHeaders().getCacheControl());
+
+        ResponseEntity<CartResponse> conditional = cartController.getCart(username, etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, conditional.getStatusCode());
+        assertNull(conditional.getBody());
+
+        cart.setVersion(3);
+        assertEquals(HttpStatus.OK, cartController.getCart(username, etag).getStatusCode());
+    }
+
+    @Test
+    public void should_modifyCart_applyOperationsInOrder() {
+
+        String username = "testuser";
+        Cart cart = new Cart();
+        User user = new User(1L, username, "hashedPassword", cart);
+        cart.setId(1L);
+        cart.setUser(user);
+        Item item1 = new Item(1L, "item 1", BigDecimal.valueOf(2.00), "Item 1 description");
+        Item item2 = new Item(2L, "item 2", BigDecimal.valueOf(3.00), "Item 2 description");
+        cart.addItem(item1, 5);
+        when(userRepo.findWithCartByUsername(username)).thenReturn(user);
+        when(itemRepo.findAllById(new HashSet<>(Arrays.asList(1L, 2L)))).thenReturn(Arrays.asList(item1, item2));
+
+        ResponseEntity<CartResponse> response = cartController.modifyCart(new BulkModifyCartRequest(username, Arrays.asList(
+                new CartOperation(CartOperation.Type.SET, 1L, 2),
+                new CartOperation(CartOperation.Type.ADD, 2L, 4),
+                new CartOperation(CartOperation.Type.REMOVE, 2L, 1))));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        CartResponse actual = response.getBody();
+        assertEquals(2, actual.getLine(1L).getQuantity());
+        assertEquals(3, actual.getLine(2L).getQuantity());
+        assertEquals(0, BigDecimal.valueOf(13.00).compareTo(actual.getTotal()));
+    }
+
+    @Test(expected = APINotFoundException.class)
+    public void shouldNot_modifyCart_itemNotFound() {
+
+        String username = "testuser";
+        when(userRepo.findWithCartByUsername(username)).thenReturn(new User(1L, username, "hashedPassword", new Cart()));
+        when(itemRepo.findAllById(new HashSet<>(Arrays.asList(1L)))).thenReturn(new ArrayList<>());
+
+        cartController.modifyCart(new BulkModifyCartRequest(username, Arrays.asList(new CartOperation(CartOperation.Type.ADD, 1L, 1))));
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_modifyCart_negativeQuantity() {
+        cartController.modifyCart(new BulkModifyCartRequest("testuser", Arrays.asList(new CartOperation(CartOperation.Type.SET, 1L, -1))));
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_modifyCart_noOperations() {
+        cartController.modifyCart(new BulkModifyCartRequest("testuser", new ArrayList<>()));
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_addToCart_negativeQuantity() {
+        cartController.addToCart(initModifyRequest("testuser", 1L, -1));
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_removeFromCart_negativeQuantity() {
+        cartController.removeFromCart(initModifyRequest("testuser", 1L, -1));
+    }
 }
@@ -1,13 +1,29 @@
 package com.example.demo.controllers;
 
 import com.example.demo.TestUtils;
+import com.example.demo.exceptions.APIBadRequestException;
 import com.example.demo.exceptions.APINotFoundException;
 import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.StockRepository;
+import com.example.demo.model.responses.ItemSummary;
+import com.example.demo.model.responses.StockLevel;
+import com.example.demo.service.CatalogVersion;
+import com.example.demo.service.InventoryService;
+import com.example.demo.service.ItemSearchIndex;
+import com.example.demo.service.ItemService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -17,6 +33,8 @@ import java.util.Optional;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -26,10 +44,32 @@ public class ItemControllerTest {
 
     private ItemRepository itemRepository = mock(ItemRepository.class);
 
+    private CartRepository cartRepository = mock(CartRepository.class);
+
+    private ItemSearchIndex searchIndex = new ItemSearchIndex();
+
+    private CatalogVersion catalogVersion = new CatalogVersion();
+
+    private ItemService itemService;
+
+    private StockRepository stockRepository = mock(StockRepository.class);
+
+    private InventoryService inventoryService;
+
     @Before
     public void setUp(){
+        itemService = new ItemService();
+        TestUtils.injectObjects(itemService, "itemRepository", itemRepository);
+        TestUtils.injectObjects(itemService, "searchIndex", searchIndex);
+        TestUtils.injectObjects(itemService, "catalogVersion", catalogVersion);
+        TestUtils.injectObjects(itemService, "cartRepository", cartRepository);
+        TestUtils.injectObjects(itemService, "cacheManager", new ConcurrentMapCacheManager());
         itemController = new ItemController();
-        TestUtils.injectObjects(itemController, "itemRepository", itemRepository);
+        TestUtils.injectObjects(itemController, "itemService", itemService);
+        TestUtils.injectObjects(itemController, "catalogVersion", catalogVersion);
+        inventoryService = new InventoryService(stockRepository, mock(PlatformTransactionManager.class), 60_000, 1000,
+                new SimpleMeterRegistry());
+        TestUtils.injectObjects(itemController, "inventoryService", inventoryService);
     }
 
     private Item initItem(Long id, String name, Double price, String description) {
@@ -46,7 +86,7 @@ public class ItemControllerTest {
 
         when(itemRepository.findById(1L)).thenReturn(Optional.of(initItem(null, null, null, null)));
 
-        ResponseEntity<Item> response = itemController.getItemById(1L);
+        ResponseEntity<Item> response = itemController.getItemById(1L, null);
 
         assertNotNull(response);
         assertEquals(response.getStatusCode(), HttpStatus.OK);
@@ -59,28 +99,65 @@ public class ItemControllerTest {
     public void shouldNot_findById() {
 
         when(itemRepository.findById(1L)).thenReturn(Optional.empty());
-        itemController.getItemById(1L);
+        itemController.getItemById(1L, null);
     }
 
     @Test
-    public void should_findAll() {
+    public void should_getStock_onlyOfTrackedItem() {
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(initItem(null, null, null, null)));
+
+        assertFalse(itemController.getStock(1L).getBody().isTracked());
+
+        inventoryService.setOnHand(1L, 5);
+        ResponseEntity<StockLevel> response = itemController.getStock(1L);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(response.getBody().isTracked());
+        assertEquals(5, response.getBody().getAvailable());
+    }
+
+    @Test
+    public void should_findAll_page() {
         Item item1 = initItem(1L, "item 1", 11.90, "Item 1");
         Item item2 = initItem(2L, "item 2", 12.90, "Item 2");
-        List<Item> items = Arrays.asList(item1, item2);
+        PageRequest pageable = PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "priceCents").and(Sort.by("id")));
 
-        when(itemRepository.findAll()).thenReturn(items);
+        when(itemRepository.findAll(pageable)).thenReturn(new PageImpl<>(Arrays.asList(item2, item1), pageable, 2));
 
-        ResponseEntity<List<Item>> response = itemController.getItems();
+        ResponseEntity<Page<?>> response = itemController.getItems(0, 20, "price,desc", false, null);
 
         assertNotNull(response);
-        assertTrue(!response.getBody().isEmpty());
+        assertEquals(Arrays.asList(item2, item1), response.getBody().getContent());
+    }
+
+    @Test
+    public void should_findAll_summaries() {
+        ItemSummary summary = new ItemSummary(1L, "item 1", 1190L);
+        PageRequest pageable = PageRequest.of(1, 10, Sort.by("id"));
+
+        when(itemRepository.findSummaries(pageable)).thenReturn(new PageImpl<>(Arrays.asList(summary), pageable, 11));
+
+        ResponseEntity<Page<?>> response = itemController.getItems(1, 10, "id", true, null);
+
+        assertEquals(11, response.getBody().getTotalElements());
+        assertEquals(summary, response.getBody().getContent().get(0));
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_findAll_unknownSortProperty() {
+        itemController.getItems(0, 20, "description", false, null);
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_findAll_unknownSortDirection() {
+        itemController.getItems(0, 20, "name,sideways", false, null);
     }
 
     @Test(expected = APINotFoundException.class)
     public void shouldNot_findByName() {
 
         when(itemRepository.findByName("item name")).thenReturn(new ArrayList<>());
-        itemController.getItemsByName("item name");
+        itemController.getItemsByName("item name", null);
     }
 
     @Test
@@ -92,7 +169,7 @@ public class ItemControllerTest {
 
         when(itemRepository.findByName("item")).thenReturn(Arrays.asList(item1, item2));
 
-        ResponseEntity<List<Item>> response = itemController.getItemsByName("item");
+        ResponseEntity<List<Item>> response = itemController.getItemsByName("item", null);
         assertNotNull(response);
         assertArrayEquals(response.getBody().toArray(), expected.toArray());
     }
@@ -105,8 +182,66 @@ public class ItemControllerTest {
 
         when(itemRepository.findByName("item")).thenReturn(Arrays.asList(item));
 
-        ResponseEntity<List<Item>> response = itemController.getItemsByName("item");
+        ResponseEntity<List<Item>> response = itemController.getItemsByName("item", null);
         assertNotNull(response);
         assertArrayEquals(response.getBody().toArray(), expected.toArray());
     }
+
+    @Test
+    public void should_searchItems() {
+
+        searchIndex.rebuild(Arrays.asList(
+                initItem(1L, "Round Widget", 2.99, "A widget that is round"),
+                initItem(2L, "Iphone cover", 12.90, "Clear cover")));
+
+        ResponseEntity<Page<Item>> response = itemController.searchItems("wid", 0, 20, null);
+
+        assertEquals(response.getStatusCode(), HttpStatus.OK);
+        assertEquals(response.getBody().getTotalElements(), 1);
+        assertEquals(response.getBody().getContent().get(0).getId(), Long.valueOf(1L));
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_searchItems_pageSizeTooLarge() {
+        itemController.searchItems("wid", 0, 1000, null);
+    }
+
+    @Test
+    public void should_findById_notModified() {
+        Item item = initItem(1L, null, null, null);
+        item.setVersion(3);
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
+
+        ResponseEntity<Item> response = itemController.getItemById(1L, null);
+        String etag = response.getHeaders().getETag();
+        assertEquals("\"item-1-3\"", etag);
+        assertEquals("max-age=60, private", response.getHeaders().getCacheControl());
+
+        ResponseEntity<Item> conditional = itemController.getItemById(1L, "W/" + etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, conditional.getStatusCode());
+        assertNull(conditional.getBody());
+        assertEquals(etag, conditional.getHeaders().getETag());
+
+        item.setVersion(4);
+        assertEquals(HttpStatus.OK, itemController.getItemById(1L, etag).getStatusCode());
+    }
+
+    @Test
+    public void should_findAll_notModifiedUntilCatalogChanges() {
+        PageRequest pageable = PageRequest.of(0, 20, Sort.by("id"));
+        when(itemRepository.findAll(pageable)).thenReturn(new PageImpl<>(new ArrayList<>(), pageable, 0));
+        String etag = itemController.getItems(0, 20, "id", false, null).getHeaders().getETag();
+
+        ResponseEntity<Page<?>> conditional = itemController.getItems(0, 20, "id", false, etag);
+
+        // the catalog is not read again for a matching ETag
+        assertEquals(HttpStatus.NOT_MODIFIED, conditional.getStatusCode());
+        verify(itemRepository, times(1)).findAll(pageable);
+
+        Item item = initItem(1L, null, null, null);
+        when(itemRepository.save(item)).thenReturn(item);
+        itemService.save(item);
+
+        assertEquals(HttpStatus.OK, itemController.getItems(0, 20, "id", false, etag).getStatusCode());
+    }
 }
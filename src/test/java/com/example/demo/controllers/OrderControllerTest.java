@@ -1,29 +1,60 @@
 package com.example.demo.controllers;
 
 import com.example.demo.TestUtils;
+import com.example.demo.aspect.LoggingAspect;
+import com.example.demo.exceptions.APIExceptionHandler;
+import com.example.demo.exceptions.APIServiceUnavailableException;
 import com.example.demo.exceptions.APIBadRequestException;
 import com.example.demo.exceptions.APINotFoundException;
 import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.IdempotencyKey;
 import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.OrderItem;
 import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserCredentials;
 import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.IdempotencyKeyRepository;
 import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.persistence.repositories.OutboxEventRepository;
+import com.example.demo.model.persistence.repositories.StockRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.CheckoutStatus;
+import com.example.demo.outbox.Outbox;
+import com.example.demo.service.AsyncCheckout;
+import com.example.demo.service.IdempotencyKeys;
+import com.example.demo.service.InventoryService;
+import com.example.demo.service.OptimisticCartLockManager;
+import com.example.demo.service.OrderService;
+import com.example.demo.service.UserDirectory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.aspectj.weaver.ast.Or;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class OrderControllerTest {
@@ -31,12 +62,35 @@ public class OrderControllerTest {
     private OrderController orderController;
     private UserRepository userRepo = mock(UserRepository.class);
     private OrderRepository orderRepo = mock(OrderRepository.class);
+    private CartRepository cartRepo = mock(CartRepository.class);
+    private IdempotencyKeyRepository idempotencyKeyRepo = mock(IdempotencyKeyRepository.class);
 
     @Before
     public void setup() {
+        OrderService orderService = new OrderService();
+        TestUtils.injectObjects(orderService, "userRepository", userRepo);
+        TestUtils.injectObjects(orderService, "orderRepository", orderRepo);
+        TestUtils.injectObjects(orderService, "cartRepository", cartRepo);
+        TestUtils.injectObjects(orderService, "inventoryService", new InventoryService(mock(StockRepository.class), mock(PlatformTransactionManager.class), 60_000, 1000, new SimpleMeterRegistry()));
+        IdempotencyKeys idempotencyKeys = new IdempotencyKeys(idempotencyKeyRepo, orderRepo, 100, 60_000, 60_000, new SimpleMeterRegistry());
+        TestUtils.injectObjects(orderService, "idempotencyKeys", idempotencyKeys);
+        TestUtils.injectObjects(orderService, "outbox", new Outbox(mock(OutboxEventRepository.class), new ObjectMapper()));
         orderController = new OrderController();
-        TestUtils.injectObjects(orderController, "userRepository", userRepo);
+        TestUtils.injectObjects(orderController, "idempotencyKeys", idempotencyKeys);
+        TestUtils.injectObjects(orderController, "userDirectory", new UserDirectory(userRepo, 100, 60_000, new SimpleMeterRegistry()));
         TestUtils.injectObjects(orderController, "orderRepository", orderRepo);
+        TestUtils.injectObjects(orderController, "orderService", orderService);
+        TestUtils.injectObjects(orderController, "cartLocks", new OptimisticCartLockManager());
+        // the order id comes from the sequence when the order is written
+        when(orderRepo.saveAndFlush(any(UserOrder.class))).thenAnswer(invocation -> {
+            UserOrder saved = invocation.getArgument(0);
+            saved.setId(7L);
+            return saved;
+        });
+    }
+
+    private UserCredentials credentials(User user) {
+        return new UserCredentials(user.getId(), user.getUsername(), user.getPassword());
     }
 
     private Cart createNonEmptyCart() {
@@ -56,15 +110,15 @@ public class OrderControllerTest {
         Cart cart = createNonEmptyCart();
         User user = new User(1L, "testuser", "hashedPassword", cart);
         cart.setUser(user);
-        List<Item> cartItems = cart.getItems();
+        List<OrderItem> cartItems = Arrays.asList(OrderItem.createFromCartItem(cart.getLine(1L)));
         BigDecimal cartTotal = cart.getTotal();
 
-        // mock function findByUsername
-        when(userRepo.findByUsername(user.getUsername())).thenReturn(user);
+        // mock function findWithCartByUsername
+        when(userRepo.findWithCartByUsername(user.getUsername())).thenReturn(user);
 
         // execute the method
-        ResponseEntity<UserOrder> response = orderController.submit(user.getUsername());
-        UserOrder order = response.getBody();
+        ResponseEntity<?> response = orderController.submit(user.getUsername(), null);
+        UserOrder order = (UserOrder) response.getBody();
 
         // verify status
         assertEquals(response.getStatusCode(), HttpStatus.OK);
@@ -75,9 +129,122 @@ public class OrderControllerTest {
         // verify the total match
         assertEquals(order.getTotal().compareTo(cartTotal), 0);
 
+        // verify the order belongs to the user
+        assertEquals(order.getUser(), user);
+
         // verify cart is empty after order is made and total is 0
         assertTrue(cart.getItems().isEmpty());
-        assertEquals(cart.getTotal(), BigDecimal.ZERO);
+        assertEquals(cart.getTotal().compareTo(BigDecimal.ZERO), 0);
+
+        // verify the order is written and the cart lines are deleted in one statement
+        verify(orderRepo).saveAndFlush(order);
+        verify(cartRepo).deleteItemsByCartId(cart.getId());
+    }
+
+    @Test
+    public void should_submit_onceForRepeatedIdempotencyKey() {
+        Cart cart = createNonEmptyCart();
+        User user = new User(1L, "testuser", "hashedPassword", cart);
+        cart.setUser(user);
+        when(userRepo.findWithCartByUsername(user.getUsername())).thenReturn(user);
+
+        UserOrder first = (UserOrder) orderController.submit(user.getUsername(), "retry-1").getBody();
+        when(orderRepo.findWithItemsById(7L)).thenReturn(Optional.of(first));
+        // the cart is empty now, a second checkout would fail
+        ResponseEntity<?> retried = orderController.submit(user.getUsername(), "retry-1");
+
+        assertEquals(HttpStatus.OK, retried.getStatusCode());
+        assertEquals(Long.valueOf(7L), ((UserOrder) retried.getBody()).getId());
+        verify(orderRepo, times(1)).saveAndFlush(any(UserOrder.class));
+        verify(idempotencyKeyRepo).saveAndFlush(any(IdempotencyKey.class));
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_submit_blankIdempotencyKey() {
+        orderController.submit("testuser", " ");
+    }
+
+    @Test
+    public void should_acceptCheckout_inAsyncMode() throws InterruptedException {
+        Cart cart = createNonEmptyCart();
+        User user = new User(1L, "testuser", "hashedPassword", cart);
+        cart.setUser(user);
+        when(userRepo.findCredentialsByUsername(user.getUsername())).thenReturn(credentials(user));
+        OrderService orderService = mock(OrderService.class);
+        when(orderService.submit(user.getUsername(), null, 9L)).thenAnswer(invocation -> {
+            UserOrder order = UserOrder.createFromCart(cart);
+            order.setId(9L);
+            return order;
+        });
+        AsyncCheckout asyncCheckout = new AsyncCheckout(orderService,
+                new UserDirectory(userRepo, 100, 60_000, new SimpleMeterRegistry()),
+                new IdempotencyKeys(idempotencyKeyRepo, orderRepo, 100, 60_000, 60_000, new SimpleMeterRegistry()), null,
+                mock(PlatformTransactionManager.class), () -> 9L, 10, 1, 10, 60_000, 1000,
+                new SimpleMeterRegistry());
+        TestUtils.injectObjects(orderController, "asyncCheckout", asyncCheckout);
+
+        ResponseEntity<?> accepted = orderController.submit(user.getUsername(), null);
+
+        assertEquals(HttpStatus.ACCEPTED, accepted.getStatusCode());
+        assertEquals("/api/order/status/testuser/9", accepted.getHeaders().getLocation().toString());
+        assertEquals(CheckoutStatus.of(9L, CheckoutStatus.State.QUEUED), accepted.getBody());
+
+        asyncCheckout.stop();
+        ResponseEntity<CheckoutStatus> polled = orderController.getStatus(user.getUsername(), 9L);
+        assertEquals(CheckoutStatus.of(9L, CheckoutStatus.State.COMPLETED), polled.getBody());
+    }
+
+    @Test
+    public void shouldNot_acceptCheckout_whenQueueFull() throws InterruptedException {
+        User user = new User(1L, "testuser", "hashedPassword", createNonEmptyCart());
+        when(userRepo.findCredentialsByUsername(user.getUsername())).thenReturn(credentials(user));
+        // a queue of one and workers never started
+        AsyncCheckout asyncCheckout = new AsyncCheckout(mock(OrderService.class),
+                new UserDirectory(userRepo, 100, 60_000, new SimpleMeterRegistry()),
+                new IdempotencyKeys(idempotencyKeyRepo, orderRepo, 100, 60_000, 60_000, new SimpleMeterRegistry()), null,
+                mock(PlatformTransactionManager.class), new AtomicLong()::incrementAndGet, 1, 1, 10, 60_000, 1000,
+                new SimpleMeterRegistry());
+        TestUtils.injectObjects(orderController, "asyncCheckout", asyncCheckout);
+        // through the logging advice, as the application calls it
+        LoggingAspect loggingAspect = new LoggingAspect();
+        AspectJProxyFactory factory = new AspectJProxyFactory(orderController);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(loggingAspect);
+        OrderController logged = factory.getProxy();
+
+        try {
+            assertEquals(HttpStatus.ACCEPTED, logged.submit(user.getUsername(), null).getStatusCode());
+            logged.submit(user.getUsername(), null);
+            fail("expected the full queue to reject the checkout");
+        } catch (APIServiceUnavailableException ex) {
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, new APIExceptionHandler().handleException(ex).getStatusCode());
+        } finally {
+            loggingAspect.destroy();
+        }
+    }
+
+    @Test
+    public void should_getStatus_ofWrittenOrder() {
+        User user = new User(1L, "testuser", "hashedPassword", new Cart());
+        UserOrder order = new UserOrder();
+        order.setId(5L);
+        order.setUser(user);
+        when(orderRepo.findById(5L)).thenReturn(Optional.of(order));
+
+        ResponseEntity<CheckoutStatus> response = orderController.getStatus(user.getUsername(), 5L);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(CheckoutStatus.State.COMPLETED, response.getBody().getState());
+    }
+
+    @Test(expected = APINotFoundException.class)
+    public void shouldNot_getStatus_ofOtherUsersOrder() {
+        UserOrder order = new UserOrder();
+        order.setId(5L);
+        order.setUser(new User(2L, "otheruser", "hashedPassword", new Cart()));
+        when(orderRepo.findById(5L)).thenReturn(Optional.of(order));
+
+        orderController.getStatus("testuser", 5L);
     }
 
     @Test(expected = APINotFoundException.class)
@@ -88,9 +255,9 @@ public class OrderControllerTest {
         User user = new User(1L, "testuser", "hashedPassword", cart);
         cart.setUser(user);
 
-        // mock function findByUsername
-        when(userRepo.findByUsername(user.getUsername())).thenReturn(null);
-        orderController.submit(user.getUsername());
+        // mock function findWithCartByUsername
+        when(userRepo.findWithCartByUsername(user.getUsername())).thenReturn(null);
+        orderController.submit(user.getUsername(), null);
     }
 
     @Test(expected = APIBadRequestException.class)
@@ -99,11 +266,11 @@ public class OrderControllerTest {
         // create a user with empty cart
         User user = new User(1L, "testuser", "hashedPassword", new Cart());
 
-        // mock function: findByUsername
-        when(userRepo.findByUsername(user.getUsername())).thenReturn(user);
+        // mock function: findWithCartByUsername
+        when(userRepo.findWithCartByUsername(user.getUsername())).thenReturn(user);
 
         // call the method
-        orderController.submit(user.getUsername());
+        orderController.submit(user.getUsername(), null);
     }
 
     @Test
@@ -115,12 +282,12 @@ public class OrderControllerTest {
         // create user
         User user = new User(1L, "testuser", "hashedPassword", new Cart());
 
-        // mock function findByUsername, findByUser
-        when(userRepo.findByUsername(user.getUsername())).thenReturn(user);
-        when(orderRepo.findByUser(user)).thenReturn(new ArrayList<>());
+        // mock function findCredentialsByUsername, findByUserIdOrderByIdDesc
+        when(userRepo.findCredentialsByUsername(user.getUsername())).thenReturn(credentials(user));
+        when(orderRepo.findByUserIdOrderByIdDesc(eq(user.getId()), any(Pageable.class))).thenReturn(new ArrayList<>());
 
         // call method
-        ResponseEntity<List<UserOrder>> response = orderController.getOrdersForUser(user.getUsername());
+        ResponseEntity<List<UserOrder>> response = orderController.getOrdersForUser(user.getUsername(), null, 20);
 
         // assert status 200
         assertEquals(response.getStatusCode(), HttpStatus.OK);
@@ -143,12 +310,12 @@ public class OrderControllerTest {
 
         UserOrder order = UserOrder.createFromCart(cart);
 
-        // mock function findByUsername, findByUser
-        when(userRepo.findByUsername(user.getUsername())).thenReturn(user);
-        when(orderRepo.findByUser(user)).thenReturn(Arrays.asList(order));
+        // mock function findCredentialsByUsername, findByUserIdOrderByIdDesc
+        when(userRepo.findCredentialsByUsername(user.getUsername())).thenReturn(credentials(user));
+        when(orderRepo.findByUserIdOrderByIdDesc(eq(user.getId()), any(Pageable.class))).thenReturn(Arrays.asList(order));
 
         // call the method
-        ResponseEntity<List<UserOrder>> response = orderController.getOrdersForUser(user.getUsername());
+        ResponseEntity<List<UserOrder>> response = orderController.getOrdersForUser(user.getUsername(), null, 20);
 
         // assert order is not empty
         assertEquals(response.getBody().get(0), order);
@@ -160,10 +327,47 @@ public class OrderControllerTest {
         // Create a new user
         User user = new User(1L, "testuser", "hashedPassword", new Cart());
 
-        // mock function findByUsername
-        when(userRepo.findByUsername(user.getUsername())).thenReturn(null);
+        // mock function findCredentialsByUsername
+        when(userRepo.findCredentialsByUsername(user.getUsername())).thenReturn(null);
 
         // call the method
-        orderController.getOrdersForUser(user.getUsername());
+        orderController.getOrdersForUser(user.getUsername(), null, 20);
+    }
+
+    @Test
+    /**
+     * A full page carries the cursor for the next page, which starts after the last order returned.
+     */
+    public void should_getOrdersForUser_nextPageCursor() {
+
+        // create user and two orders
+        User user = new User(1L, "testuser", "hashedPassword", new Cart());
+        UserOrder newer = UserOrder.createFromCart(createNonEmptyCart());
+        newer.setId(8L);
+        UserOrder older = UserOrder.createFromCart(createNonEmptyCart());
+        older.setId(5L);
+
+        // mock function findCredentialsByUsername, first page and next page
+        when(userRepo.findCredentialsByUsername(user.getUsername())).thenReturn(credentials(user));
+        when(orderRepo.findByUserIdOrderByIdDesc(eq(user.getId()), any(Pageable.class))).thenReturn(Arrays.asList(newer, older));
+        when(orderRepo.findByUserIdAndIdLessThanOrderByIdDesc(eq(user.getId()), eq(5L), any(Pageable.class))).thenReturn(new ArrayList<>());
+
+        // first page is full, so the cursor points at the last order
+        ResponseEntity<List<UserOrder>> response = orderController.getOrdersForUser(user.getUsername(), null, 2);
+        assertEquals(response.getHeaders().getFirst("X-Next-Cursor"), "5");
+
+        // next page is empty and has no cursor
+        response = orderController.getOrdersForUser(user.getUsername(), 5L, 2);
+        assertTrue(response.getBody().isEmpty());
+        assertNull(response.getHeaders().getFirst("X-Next-Cursor"));
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_getOrdersForUser_pageSizeTooLarge() {
+
+        User user = new User(1L, "testuser", "hashedPassword", new Cart());
+        when(userRepo.findCredentialsByUsername(user.getUsername())).thenReturn(credentials(user));
+
+        orderController.getOrdersForUser(user.getUsername(), null, 1000);
     }
 }
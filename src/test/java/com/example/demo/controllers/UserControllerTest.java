@@ -11,15 +11,21 @@ import com.example.demo.exceptions.APIBadRequestException;
 import com.example.demo.exceptions.APINotFoundException;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import com.example.demo.TestUtils;
+import com.example.demo.aspect.LoggingAspect;
 import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserCredentials;
 import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
 import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.service.UserDirectory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 public class UserControllerTest {
 
@@ -44,6 +50,7 @@ public class UserControllerTest {
 		TestUtils.injectObjects(userController, "userRepository", userRepo);
 		TestUtils.injectObjects(userController, "cartRepository", cartRepo);
 		TestUtils.injectObjects(userController, "passwordEncoder", encoder);
+		TestUtils.injectObjects(userController, "userDirectory", new UserDirectory(userRepo, 100, 60_000, new SimpleMeterRegistry()));
 		
 	}
 	
@@ -108,10 +115,10 @@ public class UserControllerTest {
 	public void shouldNot_creatUser_userAlreadyExists() throws Exception {
 		
 		/**
-		 * Mock findByUsername method, whenever this method is called
-		 * always return new User object.
+		 * Mock findCredentialsByUsername method, whenever this method is called
+		 * always return an existing user.
 		 */
-		when(userRepo.findByUsername("test")).thenReturn(new User());
+		when(userRepo.findCredentialsByUsername("test")).thenReturn(new UserCredentials(1L, "test", "hashedPassword"));
 		
 		CreateUserRequest r = new CreateUserRequest();
 		r.setUsername("test");
@@ -131,7 +138,7 @@ public class UserControllerTest {
 		Optional<User> userOptional = Optional.of(sampleUser);
 		when(userRepo.findById(1L)).thenReturn(userOptional);
 		
-		ResponseEntity<User> response = userController.findById(1L);
+		ResponseEntity<User> response = userController.findById(1L, null);
 		assertNotNull(response);
 		assertEquals(response.getStatusCode(), HttpStatus.OK);
 		
@@ -147,14 +154,15 @@ public class UserControllerTest {
 	public void shouldNot_findById() throws Exception {
 		long id = 1L;
 		when(userRepo.findById(id)).thenReturn(Optional.empty());
-		userController.findById(id);
+		userController.findById(id, null);
 	}
 
 	@Test
 	public void should_findByUsername() throws Exception {
 		User sampleUser = initSampleUser();
-		when (userRepo.findByUsername(sampleUser.getUsername())).thenReturn(sampleUser);
-		ResponseEntity<User> response = userController.findByUserName(sampleUser.getUsername());
+		when (userRepo.findCredentialsByUsername(sampleUser.getUsername()))
+				.thenReturn(new UserCredentials(sampleUser.getId(), sampleUser.getUsername(), sampleUser.getPassword()));
+		ResponseEntity<User> response = userController.findByUserName(sampleUser.getUsername(), null);
 
 		User u = response.getBody();
 		assertEquals(u.getUsername(), sampleUser.getUsername());
@@ -165,7 +173,27 @@ public class UserControllerTest {
 	@Test(expected = APINotFoundException.class)
 	public void shouldnot_findByUsername() throws Exception {
 		String username = "mockuser";
-		when (userRepo.findByUsername(username)).thenReturn(null);
-		ResponseEntity<User> response = userController.findByUserName(username);
+		when (userRepo.findCredentialsByUsername(username)).thenReturn(null);
+		ResponseEntity<User> response = userController.findByUserName(username, null);
+	}
+
+	@Test(expected = APIBadRequestException.class)
+	public void should_createUser_rethrowErrorThroughLogging() throws Exception {
+		LoggingAspect loggingAspect = new LoggingAspect();
+		AspectJProxyFactory factory = new AspectJProxyFactory(userController);
+		factory.setProxyTargetClass(true);
+		factory.addAspect(loggingAspect);
+		UserController logged = factory.getProxy();
+
+		CreateUserRequest r = new CreateUserRequest();
+		r.setUsername("test");
+		r.setPassword("password");
+		r.setConfirmPassword("passwordNotMatch");
+
+		try {
+			logged.createUser(r);
+		} finally {
+			loggingAspect.destroy();
+		}
 	}
 }
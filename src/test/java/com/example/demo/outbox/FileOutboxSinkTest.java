@@ -0,0 +1,43 @@
+package com.example.demo.outbox;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.example.demo.model.persistence.OutboxEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class FileOutboxSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void should_appendOneLinePerEvent() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("events/order-events.jsonl");
+        FileOutboxSink sink = new FileOutboxSink(path, objectMapper);
+
+        sink.publish(Arrays.asList(new OutboxEvent("order.created", 1L, "{\"orderId\":10}", new Date())));
+        sink.publish(Arrays.asList(new OutboxEvent("order.created", 2L, "{\"orderId\":11}", new Date())));
+
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        JsonNode second = objectMapper.readTree(lines.get(1));
+        assertEquals("order.created", second.get("type").asText());
+        assertEquals(2L, second.get("userId").asLong());
+        assertEquals(11L, second.get("payload").get("orderId").asLong());
+    }
+}
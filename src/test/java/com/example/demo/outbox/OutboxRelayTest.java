@@ -0,0 +1,102 @@
+package com.example.demo.outbox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.demo.model.persistence.OutboxEvent;
+import com.example.demo.model.persistence.repositories.OutboxEventRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The relay thread is never started, batches are relayed when the test asks for it.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@AutoConfigureJson
+@Import(Outbox.class)
+public class OutboxRelayTest {
+
+    @Autowired
+    private Outbox outbox;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private InMemoryOutboxSink sink = new InMemoryOutboxSink(100);
+
+    @Before
+    public void setUp() {
+        outbox.append("test.event", 1L, Collections.singletonMap("n", 1));
+        outbox.append("test.event", 2L, Collections.singletonMap("n", 2));
+        outbox.append("test.event", 1L, Collections.singletonMap("n", 3));
+    }
+
+    private OutboxRelay relay(OutboxSink sink, int batchSize, long lingerMillis) {
+        return new OutboxRelay(outboxEventRepository, sink, outbox, transactionManager, batchSize, lingerMillis,
+                60_000, 60_000, new SimpleMeterRegistry());
+    }
+
+    private static List<String> payloads(List<OutboxEvent> events) {
+        return events.stream().map(OutboxEvent::getPayload).collect(Collectors.toList());
+    }
+
+    @Test
+    public void should_deliverInBatches_inOrder() throws IOException {
+        OutboxRelay relay = relay(sink, 2, 0);
+
+        assertEquals(0, relay.relay());
+        assertEquals(2, sink.events().size());
+        assertEquals(0, relay.relay());
+
+        assertEquals(3, sink.events().size());
+        assertEquals("[{\"n\":1}, {\"n\":2}, {\"n\":3}]", payloads(sink.events()).toString());
+        assertTrue(outboxEventRepository.findAll().isEmpty());
+    }
+
+    @Test
+    public void should_holdPartialBatch_untilLingerIsOver() throws IOException {
+        OutboxRelay relay = relay(sink, 10, 60_000);
+
+        assertTrue(relay.relay() > 0);
+
+        assertTrue(sink.events().isEmpty());
+        assertEquals(3, outboxEventRepository.count());
+    }
+
+    @Test
+    public void should_deliverAgain_afterFailedDelivery() throws IOException {
+        try {
+            relay(events -> {
+                throw new IOException("sink down");
+            }, 10, 0).relay();
+            fail("delivery should have failed");
+        } catch (IOException expected) {
+            // the events stay in the outbox
+        }
+
+        relay(sink, 10, 0).relay();
+
+        assertEquals("[{\"n\":1}, {\"n\":2}, {\"n\":3}]", payloads(sink.events()).toString());
+        assertTrue(outboxEventRepository.findAll().isEmpty());
+    }
+}
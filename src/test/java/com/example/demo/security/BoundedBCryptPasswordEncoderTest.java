@@ -0,0 +1,71 @@
+package com.example.demo.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.example.demo.exceptions.APIServiceUnavailableException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class BoundedBCryptPasswordEncoderTest {
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private BoundedBCryptPasswordEncoder encoder;
+
+    @After
+    public void tearDown() {
+        encoder.destroy();
+    }
+
+    @Test
+    public void should_encodeAndMatch() {
+        encoder = new BoundedBCryptPasswordEncoder(4, 2, 4, meterRegistry);
+
+        String hash = encoder.encode("password");
+
+        assertTrue(encoder.matches("password", hash));
+        assertFalse(encoder.matches("wrong password", hash));
+        assertEquals(3, meterRegistry.get("security.password.queue.wait").timer().count());
+    }
+
+    @Test
+    public void should_upgradeEncoding_onlyLowerCost() {
+        encoder = new BoundedBCryptPasswordEncoder(6, 1, 1, meterRegistry);
+
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("password")));
+        assertFalse(encoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode("password")));
+        assertFalse(encoder.upgradeEncoding("{noop}password"));
+    }
+
+    @Test
+    public void shouldNot_encode_whenQueueIsFull() throws InterruptedException {
+        // one thread, one queue slot and a slow cost, so two hashes in flight fill the pool
+        encoder = new BoundedBCryptPasswordEncoder(13, 1, 1, meterRegistry);
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        clients.submit(() -> encoder.encode("password"));
+        clients.submit(() -> encoder.encode("password"));
+        while (meterRegistry.get("security.password.queue.depth").gauge().value() < 1) {
+            Thread.sleep(5);
+        }
+
+        try {
+            encoder.encode("password");
+            throw new AssertionError("expected the hash to be rejected");
+        } catch (APIServiceUnavailableException e) {
+            assertEquals(1, meterRegistry.get("security.password.rejected").counter().count(), 0);
+        } finally {
+            clients.shutdownNow();
+            clients.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.demo.security;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.exceptions.TokenExpiredException;
+
+public class JWTTokenVerifierTest {
+
+    private TestClock clock = new TestClock();
+
+    private JWTTokenVerifier verifier = new JWTTokenVerifier(SecurityConstants.ALGORITHM, 100, 60_000, clock);
+
+    private String createToken(String subject, long expiresInMillis) {
+        return JWT.create()
+                .withSubject(subject)
+                .withExpiresAt(new Date(clock.millis() + expiresInMillis))
+                .sign(SecurityConstants.ALGORITHM);
+    }
+
+    @Test
+    public void should_verify_rememberValidToken() {
+        String token = createToken("testuser", 60_000);
+
+        assertEquals("testuser", verifier.verify(token));
+        assertEquals("testuser", verifier.verify(token));
+        assertEquals(1, verifier.size());
+    }
+
+    @Test(expected = JWTVerificationException.class)
+    public void shouldNot_verify_tamperedToken() {
+        String token = createToken("testuser", 60_000);
+        verifier.verify(token.substring(0, token.length() - 2) + "xx");
+    }
+
+    @Test(expected = TokenExpiredException.class)
+    public void shouldNot_verify_expiredCachedToken() {
+        // expires in 1.5 seconds: the token expiry has second precision
+        String token = createToken("testuser", 1_500);
+        assertEquals("testuser", verifier.verify(token));
+
+        clock.advance(2_000);
+        verifier.verify(token);
+    }
+
+    /**
+     * Stands still until advanced.
+     */
+    private static final class TestClock extends Clock {
+
+        private final AtomicLong millis = new AtomicLong(System.currentTimeMillis());
+
+        void advance(long delta) {
+            millis.addAndGet(delta);
+        }
+
+        @Override
+        public long millis() {
+            return millis.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
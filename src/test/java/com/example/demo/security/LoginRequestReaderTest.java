@@ -0,0 +1,53 @@
+package com.example.demo.security;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.example.demo.exceptions.APIBadRequestException;
+import com.example.demo.model.requests.LoginRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class LoginRequestReaderTest {
+
+    private LoginRequestReader reader = new LoginRequestReader(new ObjectMapper());
+
+    private LoginRequest read(String body) throws IOException {
+        return reader.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void should_read() throws IOException {
+        LoginRequest request = read("{\"username\":\"testuser\",\"password\":\"testpassword\"}");
+
+        assertEquals("testuser", request.getUsername());
+        assertEquals("testpassword", request.getPassword());
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_read_malformedBody() throws IOException {
+        read("{\"username\":");
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_read_nullBody() throws IOException {
+        read("null");
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_read_withoutPassword() throws IOException {
+        read("{\"username\":\"testuser\"}");
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_read_bodyTooLarge() throws IOException {
+        char[] password = new char[LoginRequestReader.MAX_BODY_SIZE];
+        Arrays.fill(password, 'a');
+        read("{\"username\":\"testuser\",\"password\":\"" + new String(password) + "\"}");
+    }
+}
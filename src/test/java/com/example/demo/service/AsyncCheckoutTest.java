@@ -0,0 +1,132 @@
+package com.example.demo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.demo.exceptions.APIBadRequestException;
+import com.example.demo.exceptions.APIServiceUnavailableException;
+import com.example.demo.model.persistence.UserCredentials;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.IdempotencyKeyRepository;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.CheckoutStatus;
+import com.example.demo.model.responses.CheckoutStatus.State;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The workers are never started, queued checkouts run when the test asks for it.
+ */
+public class AsyncCheckoutTest {
+
+    private OrderService orderService = mock(OrderService.class);
+
+    private UserRepository userRepository = mock(UserRepository.class);
+
+    private AtomicLong orderIds = new AtomicLong(100);
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AsyncCheckout asyncCheckout;
+
+    @Before
+    public void setUp() {
+        when(userRepository.findCredentialsByUsername("alice")).thenReturn(new UserCredentials(1L, "alice", "hash"));
+        when(userRepository.findCredentialsByUsername("bob")).thenReturn(new UserCredentials(2L, "bob", "hash"));
+        asyncCheckout = asyncCheckout(2);
+    }
+
+    private AsyncCheckout asyncCheckout(int queueCapacity) {
+        IdempotencyKeys idempotencyKeys = new IdempotencyKeys(mock(IdempotencyKeyRepository.class),
+                mock(OrderRepository.class), 100, 60_000, 60_000, meterRegistry);
+        return new AsyncCheckout(orderService, new UserDirectory(userRepository, 100, 60_000, meterRegistry),
+                idempotencyKeys, null, mock(PlatformTransactionManager.class), orderIds::incrementAndGet,
+                queueCapacity, 1, 10, 60_000, 1000, meterRegistry);
+    }
+
+    private static UserOrder order(long id) {
+        UserOrder order = new UserOrder();
+        order.setId(id);
+        return order;
+    }
+
+    @Test
+    public void should_runBatch_inOneTransaction() throws InterruptedException {
+        when(orderService.submit("alice", null, 101L)).thenReturn(order(101L));
+        when(orderService.submit("bob", null, 102L)).thenReturn(order(102L));
+
+        assertEquals(CheckoutStatus.of(101L, State.QUEUED), asyncCheckout.submit("alice", null));
+        assertEquals(CheckoutStatus.of(102L, State.QUEUED), asyncCheckout.submit("bob", null));
+        assertEquals(2.0, meterRegistry.get("orders.checkout.queue").gauge().value(), 0.0);
+
+        assertEquals(2, asyncCheckout.processQueued(0));
+
+        assertEquals(CheckoutStatus.of(101L, State.COMPLETED), asyncCheckout.status("alice", 101L));
+        assertEquals(CheckoutStatus.of(102L, State.COMPLETED), asyncCheckout.status("bob", 102L));
+        assertEquals(1, meterRegistry.get("orders.checkout.transaction").timer().count());
+        assertEquals(2, meterRegistry.get("orders.checkout.latency").tag("outcome", "completed").timer().count());
+    }
+
+    @Test
+    public void should_runEachCheckoutAlone_whenBatchFails() throws InterruptedException {
+        when(orderService.submit("alice", null, 101L)).thenReturn(order(101L));
+        when(orderService.submit("bob", null, 102L)).thenThrow(new APIBadRequestException("Cart is empty."));
+        asyncCheckout.submit("alice", null);
+        asyncCheckout.submit("bob", null);
+
+        asyncCheckout.processQueued(0);
+
+        assertEquals(CheckoutStatus.of(101L, State.COMPLETED), asyncCheckout.status("alice", 101L));
+        assertEquals(CheckoutStatus.failed(102L, "Cart is empty.", 400), asyncCheckout.status("bob", 102L));
+        // in the rolled back batch, then alone
+        verify(orderService, times(2)).submit("alice", null, 101L);
+    }
+
+    @Test(expected = APIServiceUnavailableException.class)
+    public void shouldNot_acceptCheckout_whenQueueFull() {
+        asyncCheckout.submit("alice", null);
+        asyncCheckout.submit("bob", null);
+        try {
+            asyncCheckout.submit("alice", null);
+        } finally {
+            assertEquals(1.0, meterRegistry.get("orders.checkout.rejected").counter().count(), 0.0);
+        }
+    }
+
+    @Test
+    public void should_answerRepeatedKey_withFirstCheckout() throws InterruptedException {
+        when(orderService.submit("alice", "key", 101L)).thenReturn(order(101L));
+        CheckoutStatus first = asyncCheckout.submit("alice", "key");
+
+        assertEquals(first, asyncCheckout.submit("alice", "key"));
+        asyncCheckout.processQueued(0);
+        verify(orderService, times(1)).submit("alice", "key", first.getOrderId());
+    }
+
+    @Test
+    public void should_freeKey_ofFailedCheckout() throws InterruptedException {
+        when(orderService.submit("alice", "key", 101L)).thenThrow(new APIBadRequestException("Cart is empty."));
+        asyncCheckout.submit("alice", "key");
+        asyncCheckout.processQueued(0);
+
+        assertEquals(CheckoutStatus.of(102L, State.QUEUED), asyncCheckout.submit("alice", "key"));
+    }
+
+    @Test
+    public void shouldNot_showStatus_toOtherUser() {
+        CheckoutStatus queued = asyncCheckout.submit("alice", null);
+
+        assertNull(asyncCheckout.status("bob", queued.getOrderId()));
+    }
+}
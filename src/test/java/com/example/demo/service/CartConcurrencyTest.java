@@ -0,0 +1,188 @@
+package com.example.demo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.aop.AopAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.aspect.ConflictRetryAspect;
+import com.example.demo.exceptions.APIBadRequestException;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartItem;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.OrderItem;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.outbox.Outbox;
+
+/**
+ * Many writers changing the same cart at once, each call committing on its own. Every add that returned must be
+ * found exactly once, in the cart or in an order.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@AutoConfigureJson
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({CartService.class, OrderService.class, InventoryService.class, IdempotencyKeys.class, Outbox.class, ConflictRetryAspect.class})
+@ImportAutoConfiguration(AopAutoConfiguration.class)
+@TestPropertySource(properties = {"concurrency.retry.max-attempts=200", "concurrency.retry.backoff-millis=2"})
+public class CartConcurrencyTest {
+
+    private static final int WRITERS = 64;
+    private static final int ADDS_PER_WRITER = 5;
+    private static final AtomicInteger USERS = new AtomicInteger();
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private TransactionTemplate transaction;
+
+    private String username;
+
+    private Item[] items;
+
+    @Before
+    public void setUp() {
+        transaction = new TransactionTemplate(transactionManager);
+        username = "concurrent" + USERS.incrementAndGet();
+        items = transaction.execute(status -> {
+            Item[] created = new Item[2];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new Item(null, username + " item " + i, BigDecimal.valueOf(1.25 + i), "Item " + i);
+                entityManager.persist(created[i]);
+            }
+            Cart cart = new Cart();
+            entityManager.persist(cart);
+            entityManager.persist(new User(0, username, "hashedPassword", cart));
+            return created;
+        });
+    }
+
+    /**
+     * Start every task at the same time on its own thread and collect what they throw.
+     */
+    private Queue<Throwable> runConcurrently(List<Runnable> tasks) throws InterruptedException {
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        CountDownLatch start = new CountDownLatch(1);
+        for (Runnable task : tasks) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    task.run();
+                } catch (Throwable ex) {
+                    failures.add(ex);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+        return failures;
+    }
+
+    private int cartQuantity() {
+        return cartService.findCart(username).getItems().stream().mapToInt(CartItem::getQuantity).sum();
+    }
+
+    @Test
+    public void should_addToCart_noLostUpdates() throws InterruptedException {
+        List<Runnable> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            // half of the writers race on each line, including its first insert
+            Item item = items[w % items.length];
+            writers.add(() -> {
+                for (int i = 0; i < ADDS_PER_WRITER; i++) {
+                    cartService.addToCart(new ModifyCartRequest(username, item.getId(), 1));
+                }
+            });
+        }
+
+        Queue<Throwable> failures = runConcurrently(writers);
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        Cart cart = cartService.findCart(username);
+        int perItem = WRITERS / items.length * ADDS_PER_WRITER;
+        assertEquals(perItem, cart.getLine(items[0].getId()).getQuantity());
+        assertEquals(perItem, cart.getLine(items[1].getId()).getQuantity());
+        BigDecimal expectedTotal = items[0].getPrice().add(items[1].getPrice()).multiply(BigDecimal.valueOf(perItem));
+        assertEquals(0, expectedTotal.compareTo(cart.getTotal()));
+    }
+
+    @Test
+    public void should_submit_neverLoseConcurrentAdds() throws InterruptedException {
+        AtomicInteger added = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            if (w % 8 == 0) {
+                tasks.add(() -> {
+                    for (int i = 0; i < ADDS_PER_WRITER; i++) {
+                        try {
+                            orderService.submit(username);
+                        } catch (APIBadRequestException emptyCart) {
+                            // nothing added yet
+                        }
+                    }
+                });
+            } else {
+                Item item = items[w % items.length];
+                tasks.add(() -> {
+                    for (int i = 0; i < ADDS_PER_WRITER; i++) {
+                        cartService.addToCart(new ModifyCartRequest(username, item.getId(), 1));
+                        added.incrementAndGet();
+                    }
+                });
+            }
+        }
+
+        Queue<Throwable> failures = runConcurrently(tasks);
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        int ordered = transaction.execute(status -> entityManager
+                .createQuery("select o from UserOrder o where o.user.username = :username", UserOrder.class)
+                .setParameter("username", username)
+                .getResultList().stream()
+                .flatMap(order -> order.getItems().stream())
+                .mapToInt(OrderItem::getQuantity)
+                .sum());
+        assertEquals(added.get(), ordered + cartQuantity());
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.demo.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.example.demo.SqlStatementCounter;
+import com.example.demo.exceptions.APIConflictException;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BulkModifyCartRequest;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartResponse;
+
+/**
+ * Count the SQL statements each cart operation reads and writes, to make sure a change reads the cart once and
+ * touches only the affected line.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@AutoConfigureJson
+@Import({CartService.class, ItemService.class, ItemSearchIndex.class, CatalogVersion.class, InventoryService.class})
+@TestPropertySource(properties = {"spring.jpa.properties.hibernate.session_factory.statement_inspector=com.example.demo.SqlStatementCounter",
+        "inventory.flush-millis=3600000"})
+public class CartServiceTest {
+
+    private static final int LINES = 20;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private ItemService itemService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    private Item[] items;
+
+    @Before
+    public void setUp() {
+        // create the catalog, one more item than there are lines in the cart
+        items = new Item[LINES + 1];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = entityManager.persist(new Item(null, "item " + i, BigDecimal.valueOf(1.50), "Item " + i + " description"));
+        }
+
+        // create a user whose cart already has LINES lines of 10 units each
+        Cart cart = new Cart();
+        for (int i = 0; i < LINES; i++) {
+            cart.addItem(items[i], 10);
+        }
+        entityManager.persist(cart);
+        entityManager.persist(new User(0, "testuser", "hashedPassword", cart));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private ModifyCartRequest request(Item item, int quantity) {
+        return new ModifyCartRequest("testuser", item.getId(), quantity);
+    }
+
+    /**
+     * Flush the changes made by the operation and detach everything, so assertions read from the database.
+     */
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void should_addToCart_insertOnlyNewLine() {
+        SqlStatementCounter.reset();
+        cartService.addToCart(request(items[LINES], 3));
+        flushAndClear();
+
+        // user, cart and lines in one query, the new item in another
+        assertEquals(2, SqlStatementCounter.count("select"));
+        // one insert for the line, one update for the total, nothing else written
+        assertEquals(1, SqlStatementCounter.count("insert"));
+        assertEquals(1, SqlStatementCounter.count("update"));
+        assertEquals(0, SqlStatementCounter.count("delete"));
+    }
+
+    @Test
+    public void should_addToCart_updateOnlyExistingLine() {
+        SqlStatementCounter.reset();
+        cartService.addToCart(request(items[0], 500));
+        flushAndClear();
+
+        // the item is already in the cart, so found without a query of its own
+        assertEquals(1, SqlStatementCounter.count("select"));
+        // one update for the line quantity, one for the total
+        assertEquals(0, SqlStatementCounter.count("insert"));
+        assertEquals(2, SqlStatementCounter.count("update"));
+        assertEquals(0, SqlStatementCounter.count("delete"));
+    }
+
+    @Test
+    public void should_removeFromCart_deleteOnlyRemovedLine() {
+        SqlStatementCounter.reset();
+        cartService.removeFromCart(request(items[0], 10));
+        flushAndClear();
+
+        assertEquals(1, SqlStatementCounter.count("select"));
+        // one delete for the line, one update for the total
+        assertEquals(0, SqlStatementCounter.count("insert"));
+        assertEquals(1, SqlStatementCounter.count("update"));
+        assertEquals(1, SqlStatementCounter.count("delete"));
+
+        Cart cart = entityManager.find(Cart.class, cartId());
+        assertEquals(LINES - 1, cart.getItems().size());
+    }
+
+    @Test
+    public void should_removeFromCart_updateOnlyDecrementedLine() {
+        SqlStatementCounter.reset();
+        cartService.removeFromCart(request(items[0], 4));
+        flushAndClear();
+
+        assertEquals(0, SqlStatementCounter.count("insert"));
+        assertEquals(2, SqlStatementCounter.count("update"));
+        assertEquals(0, SqlStatementCounter.count("delete"));
+
+        Cart cart = entityManager.find(Cart.class, cartId());
+        assertEquals(6, cart.getLine(items[0].getId()).getQuantity());
+    }
+
+    @Test
+    public void should_findCart_readOnceIncludingResponse() {
+        SqlStatementCounter.reset();
+        CartResponse response = CartResponse.from(cartService.findCart("testuser"));
+
+        // user, cart, lines and items in one query, nothing loaded lazily while building the response
+        assertEquals(1, SqlStatementCounter.total());
+        assertEquals(LINES, response.getItems().size());
+        assertEquals("testuser", response.getUser().getUsername());
+        assertEquals("item 0", response.getLine(items[0].getId()).getItem().getName());
+    }
+
+    @Test
+    public void should_findUser_withoutReadingCart() {
+        SqlStatementCounter.reset();
+        User user = userRepository.findByUsername("testuser");
+
+        assertEquals(1, SqlStatementCounter.total());
+        assertEquals("testuser", user.getUsername());
+    }
+
+    @Test
+    public void should_modifyCart_readOnceForAnyNumberOfOperations() {
+        List<CartOperation> operations = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            operations.add(new CartOperation(CartOperation.Type.SET, items[i].getId(), 1));
+        }
+        for (int i = 10; i < 15; i++) {
+            operations.add(new CartOperation(CartOperation.Type.REMOVE, items[i].getId(), 10));
+        }
+        operations.add(new CartOperation(CartOperation.Type.ADD, items[LINES].getId(), 2));
+        operations.add(new CartOperation(CartOperation.Type.ADD, items[LINES].getId(), 3));
+
+        SqlStatementCounter.reset();
+        cartService.modifyCart(new BulkModifyCartRequest("testuser", operations));
+        flushAndClear();
+
+        // user, cart and lines in one query, all items in another
+        assertEquals(2, SqlStatementCounter.count("select"));
+
+        Cart cart = entityManager.find(Cart.class, cartId());
+        assertEquals(LINES - 5 + 1, cart.getItems().size());
+        assertEquals(1, cart.getLine(items[0].getId()).getQuantity());
+        assertEquals(10, cart.getLine(items[15].getId()).getQuantity());
+        assertEquals(5, cart.getLine(items[LINES].getId()).getQuantity());
+        // 10 lines of 1, 5 lines of 10 and 5 units of the new item, at 1.50 each
+        assertEquals(0, BigDecimal.valueOf(1.50 * (10 + 50 + 5)).compareTo(cart.getTotal()));
+    }
+
+    @Test(expected = APIConflictException.class)
+    public void shouldNot_addToCart_moreThanInStock() {
+        inventoryService.setOnHand(items[LINES].getId(), 2);
+
+        cartService.addToCart(request(items[LINES], 3));
+    }
+
+    @Test
+    public void should_addToCart_reserveStock() {
+        inventoryService.setOnHand(items[LINES].getId(), 5);
+
+        SqlStatementCounter.reset();
+        cartService.addToCart(request(items[LINES], 3));
+        flushAndClear();
+
+        // the counters are in memory, reserving reads nothing more
+        assertEquals(2, SqlStatementCounter.count("select"));
+        assertEquals(2, inventoryService.level(items[LINES].getId()).getAvailable());
+    }
+
+    @Test
+    public void should_saveItem_repriceOnlyItsLines() {
+        Item item = entityManager.find(Item.class, items[0].getId());
+        item.setPrice(BigDecimal.valueOf(2.00));
+
+        SqlStatementCounter.reset();
+        itemService.save(item);
+        flushAndClear();
+
+        // the item, its only cart line and that cart's total
+        assertEquals(3, SqlStatementCounter.count("update"));
+
+        Cart cart = entityManager.find(Cart.class, cartId());
+        assertEquals(200, cart.getLine(items[0].getId()).getUnitPriceCents());
+        assertEquals(150, cart.getLine(items[1].getId()).getUnitPriceCents());
+        // 20 lines of 10 units at 1.50, 10 of them now 0.50 dearer
+        assertEquals(LINES * 10 * 150 + 10 * 50, cart.getTotalCents());
+    }
+
+    private Long cartId() {
+        return entityManager.getEntityManager()
+                .createQuery("select u.cart.id from User u where u.username = 'testuser'", Long.class)
+                .getSingleResult();
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.demo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.demo.exceptions.APIBadRequestException;
+import com.example.demo.exceptions.APIConflictException;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.IdempotencyKeyRepository;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class IdempotencyKeysTest {
+
+    private OrderRepository orderRepository = mock(OrderRepository.class);
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private IdempotencyKeys idempotencyKeys;
+
+    private UserOrder order;
+
+    @Before
+    public void setUp() {
+        idempotencyKeys = new IdempotencyKeys(mock(IdempotencyKeyRepository.class), orderRepository, 100, 60_000, 60_000,
+                meterRegistry);
+        order = new UserOrder();
+        order.setId(42L);
+        when(orderRepository.findWithItemsById(42L)).thenReturn(Optional.of(order));
+    }
+
+    @Test
+    public void should_runConcurrentDuplicatesOnce() throws Exception {
+        int clients = 8;
+        AtomicInteger checkouts = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<UserOrder>> results = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                results.add(executor.submit(() -> idempotencyKeys.submit("testuser", "key", () -> {
+                    checkouts.incrementAndGet();
+                    awaitQuietly(release);
+                    return order;
+                })));
+            }
+            // let the duplicates pile up behind the first submit
+            awaitJoined(clients - 1);
+            release.countDown();
+            for (Future<UserOrder> result : results) {
+                assertEquals(Long.valueOf(42L), result.get(5, TimeUnit.SECONDS).getId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, checkouts.get());
+
+        // later duplicates are answered from memory
+        assertEquals(Long.valueOf(42L), idempotencyKeys.submit("testuser", "key", () -> {
+            throw new AssertionError("checked out twice");
+        }).getId());
+    }
+
+    @Test
+    public void should_shareFailure_withConcurrentDuplicates() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        APIConflictException failure = new APIConflictException("Not enough stock left - item id: 1");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<UserOrder> first = executor.submit(() -> idempotencyKeys.submit("testuser", "key", () -> {
+                started.countDown();
+                awaitQuietly(release);
+                throw failure;
+            }));
+            started.await();
+            Future<UserOrder> duplicate = executor.submit(() -> idempotencyKeys.submit("testuser", "key", () -> order));
+            awaitJoined(1);
+            release.countDown();
+            assertSame(failure, causeOf(first));
+            assertSame(failure, causeOf(duplicate));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // a failed submit records nothing, the key can be used again
+        assertSame(order, idempotencyKeys.submit("testuser", "key", () -> order));
+    }
+
+    @Test
+    public void should_scopeKeysByUser() {
+        idempotencyKeys.submit("testuser", "key", () -> order);
+
+        UserOrder other = new UserOrder();
+        other.setId(43L);
+        assertSame(other, idempotencyKeys.submit("otheruser", "key", () -> other));
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_acceptOverlongKey() {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i <= IdempotencyKeys.MAX_KEY_LENGTH; i++) {
+            key.append('k');
+        }
+        idempotencyKeys.submit("testuser", key.toString(), () -> order);
+    }
+
+    /**
+     * Wait until that many duplicates found the first submit running and wait for it.
+     */
+    private void awaitJoined(int duplicates) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (joined() < duplicates) {
+            if (System.nanoTime() > deadline) {
+                fail("only " + joined() + " of " + duplicates + " duplicates joined the first submit");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private double joined() {
+        return meterRegistry.get("orders.idempotent.submits").tag("outcome", "joined").counter().count();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Throwable causeOf(Future<?> future) throws InterruptedException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("submit should have failed");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (TimeoutException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.demo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.demo.exceptions.APIBadRequestException;
+import com.example.demo.exceptions.APIConflictException;
+import com.example.demo.model.persistence.Stock;
+import com.example.demo.model.persistence.repositories.StockRepository;
+import com.example.demo.model.responses.StockLevel;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class InventoryServiceTest {
+
+    private static final long HOT_ITEM = 1L;
+
+    private static final long SCARCE_ITEM = 2L;
+
+    private static final long UNTRACKED_ITEM = 3L;
+
+    private StockRepository stockRepo = mock(StockRepository.class);
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private InventoryService inventory;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        when(stockRepo.findAll()).thenReturn(Arrays.asList(new Stock(HOT_ITEM, 100, 0), new Stock(SCARCE_ITEM, 1, 0)));
+        inventory = inventory(60_000);
+        executor = Executors.newFixedThreadPool(32);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        inventory.stop();
+    }
+
+    private InventoryService inventory(long reservationTtlMillis) {
+        InventoryService inventory = new InventoryService(stockRepo, mock(PlatformTransactionManager.class),
+                reservationTtlMillis, 60_000, meterRegistry);
+        inventory.start();
+        return inventory;
+    }
+
+    private static Map<Long, Integer> units(long itemId, int quantity) {
+        return Collections.singletonMap(itemId, quantity);
+    }
+
+    private void assertLevel(long onHand, long reserved, long available, long itemId) {
+        StockLevel level = inventory.level(itemId);
+        assertEquals(onHand, level.getOnHand());
+        assertEquals(reserved, level.getReserved());
+        assertEquals(available, level.getAvailable());
+    }
+
+    /**
+     * 2000 users racing for the last 100 units of an item, then half of the winners checking out while the
+     * other half empty their carts.
+     */
+    @Test
+    public void should_reserve_neverOversellHotItem() throws Exception {
+        int users = 2000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> attempts = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            String username = "user" + i;
+            attempts.add(executor.submit(() -> {
+                start.await();
+                try {
+                    inventory.reserve(username, units(HOT_ITEM, 1));
+                    return true;
+                } catch (APIConflictException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        List<String> winners = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            if (attempts.get(i).get(10, TimeUnit.SECONDS)) {
+                winners.add("user" + i);
+            }
+        }
+
+        assertEquals(100, winners.size());
+        assertLevel(100, 100, 0, HOT_ITEM);
+        assertEquals(1900, meterRegistry.get("inventory.reservations").tag("result", "rejected").counter().count(), 0);
+
+        List<Future<?>> settled = new ArrayList<>();
+        for (int i = 0; i < winners.size(); i++) {
+            String username = winners.get(i);
+            boolean buys = i % 2 == 0;
+            settled.add(executor.submit(() -> {
+                if (buys) {
+                    inventory.holdForCheckout(username, units(HOT_ITEM, 1));
+                    inventory.commitCheckout(username, units(HOT_ITEM, 1));
+                } else {
+                    inventory.reserve(username, units(HOT_ITEM, 0));
+                }
+            }));
+        }
+        for (Future<?> future : settled) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertLevel(50, 0, 50, HOT_ITEM);
+    }
+
+    /**
+     * 100 users checking out a reserved unit while a change of their cart, taking or releasing units, rolls
+     * back: whatever the interleaving, every unit ends up sold or available again, none stays held.
+     */
+    @Test
+    public void should_rollBack_onlyUnitsItTook() throws Exception {
+        inventory.setOnHand(HOT_ITEM, 200);
+        int users = 100;
+        for (int i = 0; i < users; i++) {
+            inventory.reserve("user" + i, units(HOT_ITEM, 1));
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> settled = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            String username = "user" + i;
+            int changedQuantity = i % 2 == 0 ? 2 : 0;
+            settled.add(executor.submit(() -> {
+                start.await();
+                inTransaction(true, () -> {
+                    Map<Long, Integer> held = inventory.holdForCheckout(username, units(HOT_ITEM, 1));
+                    inventory.commitCheckout(username, held);
+                });
+                return null;
+            }));
+            settled.add(executor.submit(() -> {
+                start.await();
+                inTransaction(false, () -> inventory.reserve(username, units(HOT_ITEM, changedQuantity)));
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : settled) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertLevel(100, 0, 100, HOT_ITEM);
+    }
+
+    /**
+     * Run the change as in a transaction of this thread, then complete it.
+     */
+    private static void inTransaction(boolean commit, Runnable change) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            change.run();
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            if (commit) {
+                for (TransactionSynchronization synchronization : synchronizations) {
+                    synchronization.afterCommit();
+                }
+            }
+            for (TransactionSynchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(commit
+                        ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void should_reserve_allOrNothing() {
+        Map<Long, Integer> quantities = new HashMap<>();
+        quantities.put(HOT_ITEM, 5);
+        quantities.put(SCARCE_ITEM, 2);
+        try {
+            inventory.reserve("testuser", quantities);
+            fail("only one unit of the scarce item is on hand");
+        } catch (APIConflictException e) {
+            // expected
+        }
+
+        assertLevel(100, 0, 100, HOT_ITEM);
+        assertLevel(1, 0, 1, SCARCE_ITEM);
+    }
+
+    @Test
+    public void should_reserve_followCartQuantity() {
+        inventory.reserve("testuser", units(HOT_ITEM, 5));
+        inventory.reserve("testuser", units(HOT_ITEM, 8));
+        assertLevel(100, 8, 92, HOT_ITEM);
+
+        inventory.reserve("testuser", units(HOT_ITEM, 2));
+        assertLevel(100, 2, 98, HOT_ITEM);
+    }
+
+    @Test
+    public void should_reserve_giveBackOnRollback() {
+        inventory.reserve("testuser", units(HOT_ITEM, 5));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            inventory.reserve("testuser", units(HOT_ITEM, 9));
+            inventory.reserve("otheruser", units(HOT_ITEM, 1));
+            assertLevel(100, 10, 90, HOT_ITEM);
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertLevel(100, 5, 95, HOT_ITEM);
+    }
+
+    @Test
+    public void should_reserve_releaseOnlyAfterCommit() {
+        inventory.reserve("testuser", units(HOT_ITEM, 5));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            inventory.reserve("testuser", units(HOT_ITEM, 0));
+            // the units stay reserved until the cart change commits
+            assertLevel(100, 5, 95, HOT_ITEM);
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertLevel(100, 0, 100, HOT_ITEM);
+    }
+
+    @Test
+    public void should_expireReservations_keepCheckoutHolds() throws InterruptedException {
+        inventory.stop();
+        inventory = inventory(0);
+        inventory.reserve("idleuser", units(HOT_ITEM, 3));
+        inventory.holdForCheckout("buyer", units(HOT_ITEM, 4));
+        Thread.sleep(5);
+
+        inventory.expireReservations();
+
+        assertLevel(100, 4, 96, HOT_ITEM);
+        assertEquals(1, meterRegistry.get("inventory.reservations.expired").counter().count(), 0);
+    }
+
+    @Test
+    public void should_setOnHand_keepReservations() {
+        inventory.reserve("testuser", units(HOT_ITEM, 30));
+
+        inventory.setOnHand(HOT_ITEM, 20);
+
+        // more is reserved than on hand: nothing left to reserve until carts give units back
+        assertLevel(20, 30, -10, HOT_ITEM);
+        try {
+            inventory.reserve("otheruser", units(HOT_ITEM, 1));
+            fail("nothing is available");
+        } catch (APIConflictException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = APIBadRequestException.class)
+    public void shouldNot_setNegativeOnHand() {
+        inventory.setOnHand(HOT_ITEM, -1);
+    }
+
+    @Test
+    public void should_reserve_ignoreUntrackedItem() {
+        inventory.reserve("testuser", units(UNTRACKED_ITEM, 1000));
+
+        assertFalse(inventory.level(UNTRACKED_ITEM).isTracked());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.demo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import com.example.demo.model.persistence.Item;
+
+public class ItemSearchIndexTest {
+
+    private ItemSearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new ItemSearchIndex();
+        index.rebuild(Arrays.asList(
+                new Item(1L, "Round Widget", BigDecimal.valueOf(2.99), "A widget that is round"),
+                new Item(2L, "Square Widget", BigDecimal.valueOf(1.99), "A widget that is square"),
+                new Item(3L, "Widgetizer", BigDecimal.valueOf(9.99), "Turns anything round into a widget"),
+                new Item(4L, "Phone cover", BigDecimal.valueOf(12.90), "Clear cover for phones")));
+    }
+
+    private List<Long> ids(Page<Item> page) {
+        return page.getContent().stream().map(Item::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void should_search_caseInsensitivePrefix() {
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(index.search("WIDG", PageRequest.of(0, 10))));
+    }
+
+    @Test
+    public void should_search_rankNameAndExactMatchFirst() {
+        // "widget" is a whole word in the names of 1 and 2, only a prefix of the name of 3
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(index.search("widget", PageRequest.of(0, 10))));
+        // "round" is in the name of 1 but only in the description of 3
+        assertEquals(Arrays.asList(1L, 3L), ids(index.search("round", PageRequest.of(0, 10))));
+    }
+
+    @Test
+    public void should_search_allTermsMustMatch() {
+        assertEquals(Arrays.asList(1L, 3L), ids(index.search("round widget", PageRequest.of(0, 10))));
+        assertTrue(index.search("round phone", PageRequest.of(0, 10)).getContent().isEmpty());
+    }
+
+    @Test
+    public void should_search_page() {
+        Page<Item> page = index.search("widget", PageRequest.of(1, 2));
+
+        assertEquals(3, page.getTotalElements());
+        assertEquals(Arrays.asList(3L), ids(page));
+        assertTrue(index.search("widget", PageRequest.of(5, 2)).getContent().isEmpty());
+    }
+
+    @Test
+    public void should_index_replaceAndRemove() {
+        index.index(new Item(4L, "Widget cover", BigDecimal.valueOf(12.90), "Clear cover for widgets"));
+        assertEquals(Arrays.asList(4L), ids(index.search("cover", PageRequest.of(0, 10))));
+        assertTrue(index.search("phone", PageRequest.of(0, 10)).getContent().isEmpty());
+
+        index.remove(4L);
+        assertTrue(index.search("cover", PageRequest.of(0, 10)).getContent().isEmpty());
+        assertEquals(3, index.size());
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.demo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration
+public class ItemServiceTest {
+
+    @Configuration
+    @EnableCaching
+    static class Config {
+
+        @Bean
+        public ItemRepository itemRepository() {
+            return mock(ItemRepository.class);
+        }
+
+        @Bean
+        public CartRepository cartRepository() {
+            return mock(CartRepository.class);
+        }
+
+        @Bean
+        public ItemSearchIndex itemSearchIndex() {
+            return new ItemSearchIndex();
+        }
+
+        @Bean
+        public CatalogVersion catalogVersion() {
+            return new CatalogVersion();
+        }
+
+        @Bean
+        public ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        public ItemService itemService() {
+            return new ItemService();
+        }
+
+        @Bean
+        public CacheManager cacheManager() {
+            CaffeineCacheManager cacheManager = new CaffeineCacheManager(ItemService.ITEMS_CACHE, ItemService.ITEMS_BY_NAME_CACHE, ItemService.CATALOG_CACHE);
+            cacheManager.setCacheSpecification("maximumSize=100,recordStats");
+            return cacheManager;
+        }
+    }
+
+    @Autowired
+    private ItemService itemService;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CatalogVersion catalogVersion;
+
+    private Item item = new Item(1L, "item", BigDecimal.valueOf(11.90), "Item description");
+
+    @Before
+    public void setUp() {
+        reset(itemRepository);
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
+        when(itemRepository.findByName("item")).thenReturn(Arrays.asList(item));
+        when(itemRepository.save(item)).thenReturn(item);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache<Object, Object> nativeCache(String name) {
+        return (Cache<Object, Object>) cacheManager.getCache(name).getNativeCache();
+    }
+
+    @Test
+    public void should_findById_readThrough() {
+        long hits = nativeCache(ItemService.ITEMS_CACHE).stats().hitCount();
+
+        assertEquals(item, itemService.findById(1L).get());
+        assertEquals(item, itemService.findById(1L).get());
+
+        // second read is served from the cache
+        verify(itemRepository, times(1)).findById(1L);
+        assertEquals(hits + 1, nativeCache(ItemService.ITEMS_CACHE).stats().hitCount());
+    }
+
+    @Test
+    public void should_findById_notCacheMissingItem() {
+        when(itemRepository.findById(2L)).thenReturn(Optional.empty());
+
+        itemService.findById(2L);
+        itemService.findById(2L);
+
+        verify(itemRepository, times(2)).findById(2L);
+    }
+
+    @Test
+    public void should_save_invalidateCachedItem() {
+        itemService.findById(1L);
+        itemService.findByName("item");
+
+        itemService.save(item);
+        itemService.findById(1L);
+        itemService.findByName("item");
+
+        // both caches were invalidated by the write
+        verify(itemRepository, times(2)).findById(1L);
+        verify(itemRepository, times(2)).findByName("item");
+    }
+
+    @Test
+    public void should_save_invalidateOnlyOnceCommitted() {
+        itemService.findById(1L);
+        long generation = catalogVersion.getGeneration();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            itemService.save(item);
+            itemService.findById(1L);
+            // not committed yet: readers still get the committed item and version
+            verify(itemRepository, times(1)).findById(1L);
+            assertEquals(generation, catalogVersion.getGeneration());
+
+            TransactionSynchronizationUtils.invokeAfterCommit(TransactionSynchronizationManager.getSynchronizations());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        itemService.findById(1L);
+        verify(itemRepository, times(2)).findById(1L);
+        assertEquals(generation + 1, catalogVersion.getGeneration());
+    }
+
+    @Test
+    public void should_save_advanceCatalogVersion() {
+        long generation = catalogVersion.getGeneration();
+
+        itemService.save(item);
+        itemService.deleteById(1L);
+
+        assertEquals(generation + 2, catalogVersion.getGeneration());
+    }
+
+    @Test
+    public void should_writeCatalog_oneItemPerLine() throws IOException {
+        Item other = new Item(2L, "other", BigDecimal.valueOf(1.50), "Other description");
+        when(itemRepository.streamCatalog()).thenReturn(Stream.of(item, other));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        itemService.writeCatalog(out);
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(item, objectMapper.readValue(lines[0], Item.class));
+        assertEquals(other, objectMapper.readValue(lines[1], Item.class));
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.demo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.example.demo.SqlStatementCounter;
+import com.example.demo.model.events.OrderCreatedEvent;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.IdempotencyKey;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.OutboxEvent;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.outbox.Outbox;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Make sure checkout issues the same statements whatever the size of the cart.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@AutoConfigureJson
+@Import({OrderService.class, InventoryService.class, IdempotencyKeys.class, Outbox.class})
+@TestPropertySource(properties = {"spring.jpa.properties.hibernate.session_factory.statement_inspector=com.example.demo.SqlStatementCounter",
+        "inventory.flush-millis=3600000"})
+public class OrderServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private IdempotencyKeys idempotencyKeys;
+
+    @Before
+    public void setUp() {
+        createUserWithCart("smallcart", 2);
+        createUserWithCart("largecart", 40);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private void createUserWithCart(String username, int lines) {
+        Cart cart = new Cart();
+        for (int i = 0; i < lines; i++) {
+            Item item = entityManager.persist(new Item(null, username + " item " + i, BigDecimal.valueOf(2.25), "Item " + i + " description"));
+            cart.addItem(item, 3);
+        }
+        entityManager.persist(cart);
+        entityManager.persist(new User(0, username, "hashedPassword", cart));
+    }
+
+    @Test
+    public void should_submit_sameStatementsForAnyCartSize() {
+        SqlStatementCounter.reset();
+        UserOrder small = orderService.submit("smallcart");
+        // ids come from pooled sequences, only the first order of a pool reads the sequence
+        int smallCartStatements = SqlStatementCounter.total() - SqlStatementCounter.count("call");
+
+        SqlStatementCounter.reset();
+        UserOrder large = orderService.submit("largecart");
+        int largeCartStatements = SqlStatementCounter.total() - SqlStatementCounter.count("call");
+
+        assertEquals(2, small.getItems().size());
+        assertEquals(40, large.getItems().size());
+        assertEquals(smallCartStatements, largeCartStatements);
+
+        // user, cart, lines and items in one query
+        assertEquals(1, SqlStatementCounter.count("select"));
+        // the order row, one batch of order lines and the outbox event
+        assertEquals(3, SqlStatementCounter.count("insert"));
+        // all cart lines in one statement
+        assertEquals(1, SqlStatementCounter.count("delete"));
+    }
+
+    @Test
+    public void should_submit_writeOrderCreatedEvent() throws IOException {
+        UserOrder order = orderService.submit("smallcart");
+
+        List<OutboxEvent> events = entityManager.getEntityManager()
+                .createQuery("select e from OutboxEvent e", OutboxEvent.class)
+                .getResultList();
+        assertEquals(1, events.size());
+        assertEquals(OrderCreatedEvent.TYPE, events.get(0).getType());
+        assertEquals(order.getUser().getId(), events.get(0).getUserId());
+        OrderCreatedEvent event = objectMapper.readValue(events.get(0).getPayload(), OrderCreatedEvent.class);
+        assertEquals(order.getId().longValue(), event.getOrderId());
+        assertEquals(2, event.getItems().size());
+        assertEquals(0, order.getTotal().compareTo(event.getTotal()));
+    }
+
+    @Test
+    public void should_submit_clearCart() {
+        UserOrder order = orderService.submit("largecart");
+        entityManager.clear();
+
+        User user = entityManager.find(User.class, order.getUser().getId());
+        assertTrue(user.getCart().getItems().isEmpty());
+        assertEquals(0, user.getCart().getTotal().compareTo(BigDecimal.ZERO));
+        assertEquals(0, entityManager.find(UserOrder.class, order.getId()).getTotal().compareTo(BigDecimal.valueOf(2.25 * 3 * 40)));
+    }
+
+    @Test
+    public void should_submit_returnOrderOfRecordedKey() {
+        UserOrder first = orderService.submit("smallcart", "key-1");
+        entityManager.clear();
+
+        // the cart is empty now: the key is answered from the database without checking out again
+        UserOrder repeated = orderService.submit("smallcart", "key-1");
+
+        assertEquals(first.getId(), repeated.getId());
+        assertEquals(2, repeated.getItems().size());
+        assertEquals(1, entityManager.getEntityManager()
+                .createQuery("select count(o) from UserOrder o where o.user.username = 'smallcart'", Long.class)
+                .getSingleResult().intValue());
+    }
+
+    @Test
+    public void should_purge_onlyExpiredKeys() {
+        long day = 86_400_000L;
+        entityManager.persist(new IdempotencyKey("9:smallcart:old", 1L, new Date(System.currentTimeMillis() - 2 * day)));
+        entityManager.persist(new IdempotencyKey("9:smallcart:new", 2L, new Date()));
+        entityManager.flush();
+
+        assertEquals(1, idempotencyKeys.purgeExpired());
+
+        assertEquals(1, entityManager.getEntityManager()
+                .createQuery("select count(k) from IdempotencyKey k where k.scopedKey = '9:smallcart:new'", Long.class)
+                .getSingleResult().intValue());
+    }
+
+    @Test
+    public void should_writeHistory_newestFirst() throws IOException {
+        UserOrder first = orderService.submit("smallcart");
+        User user = entityManager.find(User.class, first.getUser().getId());
+        Cart cart = user.getCart();
+        cart.addItem(first.getItems().get(0).getItem(), 1);
+        entityManager.flush();
+        UserOrder second = orderService.submit("smallcart");
+        entityManager.clear();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        orderService.writeHistory(first.getUser().getId(), out);
+
+        JsonNode history = objectMapper.readTree(out.toByteArray());
+        assertEquals(2, history.size());
+        assertEquals(second.getId().longValue(), history.get(0).get("id").asLong());
+        assertEquals(first.getId().longValue(), history.get(1).get("id").asLong());
+        assertEquals(2, history.get(1).get("items").size());
+    }
+
+    @Test
+    public void should_writeHistory_sameSelectsForAnyNumberOfOrders() throws IOException {
+        UserOrder first = orderService.submit("smallcart");
+        long userId = first.getUser().getId();
+        Item item = first.getItems().get(0).getItem();
+        submitAgain(userId, item);
+        entityManager.clear();
+        SqlStatementCounter.reset();
+        orderService.writeHistory(userId, new ByteArrayOutputStream());
+        int twoOrders = SqlStatementCounter.count("select");
+
+        for (int i = 0; i < 3; i++) {
+            submitAgain(userId, item);
+        }
+        entityManager.clear();
+        SqlStatementCounter.reset();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        orderService.writeHistory(userId, out);
+
+        // the lines of all the orders are read with one query
+        assertEquals(twoOrders, SqlStatementCounter.count("select"));
+        assertEquals(5, objectMapper.readTree(out.toByteArray()).size());
+    }
+
+    private void submitAgain(long userId, Item item) {
+        entityManager.find(User.class, userId).getCart().addItem(entityManager.find(Item.class, item.getId()), 1);
+        entityManager.flush();
+        orderService.submit("smallcart");
+    }
+}
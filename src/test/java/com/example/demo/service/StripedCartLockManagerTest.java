@@ -0,0 +1,122 @@
+package com.example.demo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.demo.exceptions.APIServiceUnavailableException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class StripedCartLockManagerTest {
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private StripedCartLockManager cartLocks;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        cartLocks = new StripedCartLockManager(100, 500, meterRegistry);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Hold the lock of the user on another thread until the returned latch is released.
+     */
+    private CountDownLatch holdLock(String username) throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> cartLocks.withLock(username, () -> {
+            locked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    /**
+     * A username whose lock is not the one of the given user.
+     */
+    private String otherStripe(String username) {
+        for (int i = 0; ; i++) {
+            if (cartLocks.lockFor("user" + i) != cartLocks.lockFor(username)) {
+                return "user" + i;
+            }
+        }
+    }
+
+    @Test
+    public void should_roundStripesToPowerOfTwo() {
+        assertEquals(128, cartLocks.stripes());
+        assertSame(cartLocks.lockFor("testuser"), cartLocks.lockFor(new String("testuser")));
+        assertNotSame(cartLocks.lockFor("testuser"), cartLocks.lockFor(otherStripe("testuser")));
+    }
+
+    @Test
+    public void should_withLock_otherCartsProceed() throws Exception {
+        CountDownLatch release = holdLock("testuser");
+
+        assertEquals("done", cartLocks.withLock(otherStripe("testuser"), () -> "done"));
+        release.countDown();
+    }
+
+    @Test
+    public void should_withLock_sameCartWaits() throws Exception {
+        CountDownLatch release = holdLock("testuser");
+        ExecutorService waiter = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> second = waiter.submit(() -> cartLocks.withLock("testuser", () -> "second"));
+            Thread.sleep(50);
+            assertTrue(!second.isDone());
+
+            release.countDown();
+            assertEquals("second", second.get(5, TimeUnit.SECONDS));
+        } finally {
+            waiter.shutdownNow();
+        }
+        assertEquals(2, meterRegistry.timer("cart.lock.wait").count());
+    }
+
+    @Test
+    public void shouldNot_withLock_waitPastTimeout() throws Exception {
+        CountDownLatch release = holdLock("testuser");
+        try {
+            cartLocks.withLock("testuser", () -> "late");
+            fail("expected the wait to time out");
+        } catch (APIServiceUnavailableException ex) {
+            assertEquals(1, meterRegistry.counter("cart.lock.timeouts").count(), 0);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void should_runChange_ofNullUsername() {
+        // the change itself answers that the user does not exist
+        assertEquals("ran", cartLocks.withLock(null, () -> "ran"));
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.demo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.example.demo.model.persistence.UserCredentials;
+import com.example.demo.model.persistence.repositories.UserRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class UserDirectoryTest {
+
+    private UserRepository userRepo = mock(UserRepository.class);
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private UserDirectory userDirectory;
+
+    private UserCredentials credentials = new UserCredentials(1L, "testuser", "hashedPassword");
+
+    @Before
+    public void setUp() {
+        userDirectory = new UserDirectory(userRepo, 2, 60_000, meterRegistry);
+        when(userRepo.findCredentialsByUsername("testuser")).thenReturn(credentials);
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private double lookups(String source) {
+        return meterRegistry.get("users.lookups").tag("source", source).counter().count();
+    }
+
+    @Test
+    public void should_find_readDatabaseOnce() {
+        assertEquals(credentials, userDirectory.find("testuser"));
+        assertEquals(credentials, userDirectory.find("testuser"));
+
+        verify(userRepo, times(1)).findCredentialsByUsername("testuser");
+        assertEquals(1, lookups("database"), 0);
+        assertEquals(1, lookups("cache"), 0);
+    }
+
+    @Test
+    public void should_find_answerRequestFromMemo() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        userDirectory.find("testuser");
+        userDirectory.find("testuser");
+        userDirectory.find("testuser");
+
+        assertEquals(1, lookups("database"), 0);
+        assertEquals(2, lookups("memo"), 0);
+        assertEquals(0, lookups("cache"), 0);
+    }
+
+    @Test
+    public void should_find_notCacheUnknownUser() {
+        assertNull(userDirectory.find("unknown"));
+        assertNull(userDirectory.find("unknown"));
+
+        verify(userRepo, times(2)).findCredentialsByUsername("unknown");
+        assertEquals(0, userDirectory.size());
+    }
+
+    @Test
+    public void should_invalidate_rereadChangedUser() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        userDirectory.find("testuser");
+
+        UserCredentials changed = new UserCredentials(1L, "testuser", "newHashedPassword");
+        when(userRepo.findCredentialsByUsername("testuser")).thenReturn(changed);
+        userDirectory.invalidate("testuser");
+
+        assertEquals(changed, userDirectory.find("testuser"));
+        verify(userRepo, times(2)).findCredentialsByUsername("testuser");
+    }
+
+    @Test
+    public void should_find_boundCacheSize() {
+        for (int i = 0; i < 10; i++) {
+            when(userRepo.findCredentialsByUsername("user" + i)).thenReturn(new UserCredentials(i, "user" + i, "hashedPassword"));
+            userDirectory.find("user" + i);
+        }
+
+        assertTrue(userDirectory.size() <= 2);
+    }
+}
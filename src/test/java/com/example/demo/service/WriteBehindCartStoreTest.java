@@ -0,0 +1,179 @@
+package com.example.demo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.demo.SqlStatementCounter;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.outbox.Outbox;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Changes of the write-behind store reach the database only when written, and are all written by a graceful
+ * shutdown, an eviction or a submit.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@AutoConfigureJson
+@Import({OrderService.class, InventoryService.class, IdempotencyKeys.class, Outbox.class, ItemService.class, ItemSearchIndex.class, CatalogVersion.class})
+@TestPropertySource(properties = {"spring.jpa.properties.hibernate.session_factory.statement_inspector=com.example.demo.SqlStatementCounter",
+        "inventory.flush-millis=3600000"})
+public class WriteBehindCartStoreTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ItemService itemService;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Item[] items;
+
+    @Before
+    public void setUp() {
+        items = new Item[3];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = entityManager.persist(new Item(null, "item " + i, BigDecimal.valueOf(1.50), "Item " + i));
+        }
+        createUser("alice");
+        createUser("bob");
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private void createUser(String username) {
+        Cart cart = new Cart();
+        entityManager.persist(cart);
+        entityManager.persist(new User(0, username, "hashedPassword", cart));
+    }
+
+    /**
+     * The background writer is never started, carts are only written when the test asks for it.
+     */
+    private WriteBehindCartStore store(long maxLines, long idleMillis) {
+        UserDirectory userDirectory = new UserDirectory(userRepository, 100, 60_000, new SimpleMeterRegistry());
+        return new WriteBehindCartStore(userDirectory, userRepository, itemService, inventoryService,
+                transactionManager, maxLines, idleMillis, 60_000, 100, new SimpleMeterRegistry());
+    }
+
+    private Cart storedCart(String username) {
+        entityManager.flush();
+        entityManager.clear();
+        return userRepository.findWithCartByUsername(username).getCart();
+    }
+
+    @Test
+    public void should_writeCoalescedChanges_onShutdown() throws InterruptedException {
+        WriteBehindCartStore store = store(1000, 60_000);
+        store.addToCart(new ModifyCartRequest("alice", items[0].getId(), 2));
+        store.addToCart(new ModifyCartRequest("alice", items[0].getId(), 3));
+        Cart changed = store.addToCart(new ModifyCartRequest("alice", items[1].getId(), 1));
+        store.removeFromCart(new ModifyCartRequest("alice", items[1].getId(), 1));
+
+        // nothing written yet
+        assertEquals(5, changed.getLine(items[0].getId()).getQuantity());
+        assertTrue(storedCart("alice").getItems().isEmpty());
+
+        SqlStatementCounter.reset();
+        store.stop();
+        Cart stored = storedCart("alice");
+
+        // four changes, one line written
+        assertEquals(1, SqlStatementCounter.count("insert"));
+        assertEquals(1, stored.getItems().size());
+        assertEquals(5, stored.getLine(items[0].getId()).getQuantity());
+        assertEquals(5 * 150, stored.getTotalCents());
+    }
+
+    @Test
+    public void should_writeLeastRecentlyUsedCart_whenOverBudget() {
+        // alice's cart weighs 3 lines, bob's 2
+        WriteBehindCartStore store = store(4, 60_000);
+        store.addToCart(new ModifyCartRequest("alice", items[0].getId(), 1));
+        store.addToCart(new ModifyCartRequest("alice", items[1].getId(), 1));
+        store.addToCart(new ModifyCartRequest("bob", items[2].getId(), 4));
+
+        assertEquals(1, store.size());
+        assertEquals(2, store.lines());
+        assertEquals(2, storedCart("alice").getItems().size());
+        assertTrue(storedCart("bob").getItems().isEmpty());
+
+        // evicted carts are read back as written
+        assertEquals(2, store.findCart("alice").getItems().size());
+    }
+
+    @Test
+    public void should_writeIdleCart() {
+        WriteBehindCartStore store = store(1000, 0);
+        store.addToCart(new ModifyCartRequest("alice", items[0].getId(), 1));
+
+        store.evictIdle();
+
+        assertEquals(0, store.size());
+        assertEquals(0, store.lines());
+        assertEquals(1, storedCart("alice").getItems().size());
+    }
+
+    @Test
+    public void should_writeCart_beforeSubmit() {
+        WriteBehindCartStore store = store(1000, 60_000);
+        store.addToCart(new ModifyCartRequest("alice", items[0].getId(), 2));
+        store.addToCart(new ModifyCartRequest("alice", items[1].getId(), 1));
+
+        UserOrder order = store.submit("alice", () -> orderService.submit("alice"));
+
+        assertEquals(2, order.getItems().size());
+        assertEquals(0, store.size());
+        assertTrue(store.findCart("alice").getItems().isEmpty());
+    }
+
+    @Test
+    public void should_changeVersion_withEveryChangeAndReload() {
+        WriteBehindCartStore store = store(1000, 0);
+        long loaded = store.findCart("alice").getVersion();
+        long changed = store.addToCart(new ModifyCartRequest("alice", items[0].getId(), 1)).getVersion();
+        store.removeFromCart(new ModifyCartRequest("alice", items[0].getId(), 1));
+
+        // the changes cancel out, the cart is still written and its database version moves on
+        store.evictIdle();
+        long reloaded = store.findCart("alice").getVersion();
+
+        assertEquals(loaded + 1, changed);
+        assertNotEquals(loaded, reloaded);
+        assertTrue(reloaded > changed + 1);
+        assertNull(store.findCart("alice").getLine(items[0].getId()));
+    }
+}